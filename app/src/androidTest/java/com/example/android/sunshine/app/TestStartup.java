@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Launches MainActivity a number of times and reports start times as seen by StartupTracer.
+    The instrumentation process is already running, so even the first launch here is not a
+    cold start; it only has cold activity and view state.  Measure true cold starts from outside,
+    e.g. with am start -W after am force-stop.
+ */
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestStartup.class.getSimpleName();
+
+    private static final int RELAUNCHES = 5;
+    private static final long FIRST_FRAME_TIMEOUT = 5000;
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    public void testStartupTimes() {
+        for (int i = 0; i <= RELAUNCHES; i++) {
+            getActivity();
+            new PollingCheck(FIRST_FRAME_TIMEOUT) {
+                @Override
+                protected boolean check() {
+                    return StartupTracer.getLastTimeToFirstFrame() >= 0;
+                }
+            }.run();
+            Log.i(LOG_TAG, (StartupTracer.isLastStartFirstInProcess() ? "First launch" : "Relaunch") +
+                    ": first frame " + StartupTracer.getLastTimeToFirstFrame() +
+                    "ms, first forecast " + StartupTracer.getLastTimeToFirstForecast() + "ms");
+
+            getActivity().finish();
+            getInstrumentation().waitForIdleSync();
+            setActivity(null);
+        }
+
+        assertTrue("Error: No relaunches were recorded",
+                StartupTracer.getAverageRelaunchFirstFrame() >= 0);
+        Log.i(LOG_TAG, "Average first frame: first launch " +
+                StartupTracer.getAverageFirstLaunchFirstFrame() + "ms, relaunch " +
+                StartupTracer.getAverageRelaunchFirstFrame() + "ms");
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+/*
+    Feeds bursts of alerts to the coalescer and checks what gets its own notification.  The
+    coalescer lives for the whole process, so each test uses its own locations and compares
+    counters before and after.
+ */
+public class TestAlertCoalescer extends AndroidTestCase {
+
+    private AlertCoalescer mCoalescer;
+    private String mLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCoalescer = AlertCoalescer.getInstance(mContext);
+        mLocation = getName() + System.nanoTime();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Don't leave the merged update's alarm behind to post after the test.
+        mCoalescer.cancel(mLocation);
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.cancel(mLocation, MyGcmListenerService.NOTIFICATION_ID);
+        super.tearDown();
+    }
+
+    public void testDropsRepeats() {
+        int posted = mCoalescer.getPosted();
+        int duplicates = mCoalescer.getDuplicates();
+
+        assertTrue(mCoalescer.offer(mLocation, "Storm in " + mLocation));
+        assertFalse("Error: Repeated alert was accepted",
+                mCoalescer.offer(mLocation, "Storm in " + mLocation));
+
+        assertEquals(posted + 1, mCoalescer.getPosted());
+        assertEquals(duplicates + 1, mCoalescer.getDuplicates());
+    }
+
+    public void testDropsRepeatsAfterProcessRestart() {
+        assertTrue(mCoalescer.offer(mLocation, "Storm in " + mLocation));
+
+        // A fresh instance reads only what was persisted, like the next GCM message's process.
+        AlertCoalescer restarted = new AlertCoalescer(mContext);
+        assertFalse("Error: Repeated alert was accepted in a new process",
+                restarted.offer(mLocation, "Storm in " + mLocation));
+        assertEquals(1, restarted.getDuplicates());
+    }
+
+    public void testMergesBurst() {
+        int posted = mCoalescer.getPosted();
+        int merged = mCoalescer.getMerged();
+        int suppressed = mCoalescer.getSuppressed();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mCoalescer.offer(mLocation, "Storm " + i + " in " + mLocation));
+        }
+
+        assertEquals("Error: More than the first alert of a burst was posted right away",
+                posted + 1, mCoalescer.getPosted());
+        assertEquals(merged + 9, mCoalescer.getMerged());
+        assertEquals(suppressed + 9, mCoalescer.getSuppressed());
+
+        // What the alarm would do at the end of the window
+        mCoalescer.flush(mLocation);
+        assertEquals("Error: Merged alerts weren't posted as one update",
+                posted + 2, mCoalescer.getPosted());
+        mCoalescer.flush(mLocation);
+        assertEquals("Error: Merged update was posted twice", posted + 2, mCoalescer.getPosted());
+    }
+
+    public void testLocationsDontMerge() {
+        int posted = mCoalescer.getPosted();
+
+        mCoalescer.offer(mLocation, "Storm in " + mLocation);
+        mCoalescer.offer(mLocation + "-other", "Storm in " + mLocation + "-other");
+
+        assertEquals(posted + 2, mCoalescer.getPosted());
+        mCoalescer.cancel(mLocation + "-other");
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.cancel(mLocation + "-other", MyGcmListenerService.NOTIFICATION_ID);
+    }
+}
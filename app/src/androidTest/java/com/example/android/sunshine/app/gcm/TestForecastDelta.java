@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.TimeZone;
+
+/*
+    Applies forecast deltas to the provider, using a Bundle shaped like a GCM data message in
+    place of a real push.
+ */
+public class TestForecastDelta extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int DAYS = 3;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+        insertDays();
+    }
+
+    /*
+        Stores DAYS days from TEST_DATE the way the sync adapter does, in the current time zone.
+     */
+    private void insertDays() {
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            days[i] = new ContentValues();
+            days[i].put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            days[i].put(WeatherEntry.COLUMN_DATE, getDate(i));
+            days[i].put(WeatherEntry.COLUMN_MAX_TEMP, 10 + i);
+            days[i].put(WeatherEntry.COLUMN_MIN_TEMP, i);
+            days[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i].put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            days[i].put(WeatherEntry.COLUMN_HUMIDITY, 50);
+            days[i].put(WeatherEntry.COLUMN_PRESSURE, 1000);
+            days[i].put(WeatherEntry.COLUMN_WIND_SPEED, 5);
+            days[i].put(WeatherEntry.COLUMN_DEGREES, 90);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    private static long getDate(int day) {
+        return new Time().setJulianDay(Time.getJulianDay(TEST_DATE, 0) + day);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static Bundle createMessage(String delta) {
+        Bundle data = new Bundle();
+        data.putString(ForecastDelta.EXTRA_DELTA, delta);
+        return data;
+    }
+
+    private Cursor queryDay(int day) {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLocationId),
+                        Long.toString(getDate(day))},
+                null);
+        assertNotNull("Error: Null cursor for day " + day, cursor);
+        return cursor;
+    }
+
+    private double getDouble(Cursor cursor, String column) {
+        return cursor.getDouble(cursor.getColumnIndex(column));
+    }
+
+    public void testUpdatesOnlyChangedFields() {
+        int written = MyGcmListenerService.applyForecastDelta(mContext, createMessage(
+                "{\"loc\":\"" + TEST_LOCATION + "\",\"start\":" + TEST_DATE
+                        + ",\"days\":[[1,25,15,500,\"Rain\"]]}"));
+        assertEquals("Error: Wrong number of days written", 1, written);
+
+        Cursor cursor = queryDay(1);
+        assertTrue("Error: Changed day is gone", cursor.moveToFirst());
+        assertEquals(25.0, getDouble(cursor, WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals(15.0, getDouble(cursor, WeatherEntry.COLUMN_MIN_TEMP));
+        assertEquals("Rain", cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+        assertEquals("Error: Field missing from the delta was changed",
+                50.0, getDouble(cursor, WeatherEntry.COLUMN_HUMIDITY));
+        cursor.close();
+
+        cursor = queryDay(0);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Day missing from the delta was changed",
+                10.0, getDouble(cursor, WeatherEntry.COLUMN_MAX_TEMP));
+        cursor.close();
+    }
+
+    public void testAddsOnlyCompleteNewDays() {
+        int written = MyGcmListenerService.applyForecastDelta(mContext, createMessage(
+                "{\"loc\":\"" + TEST_LOCATION + "\",\"start\":" + TEST_DATE + ",\"days\":["
+                        + "[3,5,1,600,\"Snow\",80,990,12,180],"
+                        + "[4,5,1,600,\"Snow\"]]}"));
+        assertEquals("Error: Wrong number of days written", 1, written);
+
+        Cursor cursor = queryDay(3);
+        assertEquals("Error: Complete new day wasn't added", 1, cursor.getCount());
+        cursor.close();
+        cursor = queryDay(4);
+        assertEquals("Error: Partial new day was added", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        West of UTC, the start's UTC midnight is still the previous day locally.  The delta has
+        to land on the day it names, not that one.
+     */
+    public void testUpdatesNamedDayWestOfUtc() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        try {
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+            insertDays();
+
+            int written = MyGcmListenerService.applyForecastDelta(mContext, createMessage(
+                    "{\"loc\":\"" + TEST_LOCATION + "\",\"start\":" + TEST_DATE
+                            + ",\"days\":[[1,25,15,500,\"Rain\"]]}"));
+            assertEquals("Error: Wrong number of days written", 1, written);
+
+            Cursor cursor = queryDay(1);
+            assertTrue("Error: Changed day is gone", cursor.moveToFirst());
+            assertEquals("Error: Delta landed on the wrong day",
+                    25.0, getDouble(cursor, WeatherEntry.COLUMN_MAX_TEMP));
+            cursor.close();
+
+            cursor = queryDay(0);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: Day before the one in the delta was changed",
+                    10.0, getDouble(cursor, WeatherEntry.COLUMN_MAX_TEMP));
+            cursor.close();
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    public void testIgnoresUnknownLocation() throws Exception {
+        ForecastDelta delta = ForecastDelta.parse(
+                "{\"loc\":\"00000\",\"start\":" + TEST_DATE + ",\"days\":[[0,25,15,500,\"Rain\"]]}");
+        assertEquals("Error: Applied a delta for a location we don't have", -1,
+                delta.apply(mContext));
+    }
+
+    public void testIgnoresMalformedMessage() {
+        assertEquals(0, MyGcmListenerService.applyForecastDelta(mContext,
+                createMessage("{\"loc\":\"" + TEST_LOCATION + "\",\"days\":[[0]]}")));
+        assertEquals(0, MyGcmListenerService.applyForecastDelta(mContext, new Bundle()));
+    }
+}
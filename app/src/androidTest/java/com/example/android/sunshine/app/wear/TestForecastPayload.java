@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+
+/*
+    Checks that ForecastPayload survives a round trip, and compares its size and encode/decode
+    time with the obvious layout of one DataMap per day.
+ */
+public class TestForecastPayload extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastPayload.class.getSimpleName();
+
+    private static final int ITERATIONS = 1000;
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+
+    private static ForecastPayload createForecast() {
+        ForecastPayload forecast = new ForecastPayload(ForecastPayload.MAX_DAYS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < forecast.size(); i++) {
+            forecast.dates[i] = today + i * DAY_MS;
+            forecast.max[i] = 20 + i;
+            forecast.min[i] = -5 + i;
+            forecast.weatherIds[i] = 800 + i % 5;
+        }
+        return forecast;
+    }
+
+    private static byte[] encodeNaive(ForecastPayload forecast) {
+        ArrayList<DataMap> days = new ArrayList<>();
+        for (int i = 0; i < forecast.size(); i++) {
+            DataMap day = new DataMap();
+            day.putLong("date", forecast.dates[i]);
+            day.putInt(CompanionConstants.KEY_MAX_TEMP, forecast.max[i]);
+            day.putInt(CompanionConstants.KEY_MIN_TEMP, forecast.min[i]);
+            day.putInt("weather-id", forecast.weatherIds[i]);
+            days.add(day);
+        }
+        DataMap data = new DataMap();
+        data.putDataMapArrayList(CompanionConstants.KEY_FORECAST, days);
+        return data.toByteArray();
+    }
+
+    private static ForecastPayload decodeNaive(byte[] bytes) {
+        ArrayList<DataMap> days = DataMap.fromByteArray(bytes)
+                .getDataMapArrayList(CompanionConstants.KEY_FORECAST);
+        ForecastPayload forecast = new ForecastPayload(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            DataMap day = days.get(i);
+            forecast.dates[i] = day.getLong("date");
+            forecast.max[i] = day.getInt(CompanionConstants.KEY_MAX_TEMP);
+            forecast.min[i] = day.getInt(CompanionConstants.KEY_MIN_TEMP);
+            forecast.weatherIds[i] = day.getInt("weather-id");
+        }
+        return forecast;
+    }
+
+    public void testRoundTrip() {
+        ForecastPayload forecast = createForecast();
+        ForecastPayload decoded = ForecastPayload.decode(forecast.encode());
+        assertNotNull("Error: Payload didn't decode", decoded);
+        assertEquals("Error: Wrong number of days", forecast.size(), decoded.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            assertEquals("Error: Wrong date for day " + i, forecast.dates[i], decoded.dates[i]);
+            assertEquals("Error: Wrong max for day " + i, forecast.max[i], decoded.max[i]);
+            assertEquals("Error: Wrong min for day " + i, forecast.min[i], decoded.min[i]);
+            assertEquals("Error: Wrong condition for day " + i,
+                    forecast.weatherIds[i], decoded.weatherIds[i]);
+        }
+    }
+
+    public void testRejectsOtherVersions() {
+        byte[] bytes = createForecast().encode();
+        bytes[0] = ForecastPayload.VERSION + 1;
+        assertNull("Error: Decoded a payload from another version", ForecastPayload.decode(bytes));
+    }
+
+    public void testRejectsBadDayCounts() {
+        byte[] bytes = createForecast().encode();
+        // Above 127, so negative if read as a signed byte
+        bytes[1] = (byte) 200;
+        assertNull("Error: Decoded a payload with too many days", ForecastPayload.decode(bytes));
+        bytes[1] = (byte) ForecastPayload.MAX_DAYS;
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertNull("Error: Decoded a truncated payload", ForecastPayload.decode(truncated));
+    }
+
+    public void testSmallerThanNaiveLayout() {
+        ForecastPayload forecast = createForecast();
+
+        byte[] compact = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            compact = forecast.encode();
+        }
+        long compactEncodeNs = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ForecastPayload.decode(compact);
+        }
+        long compactDecodeNs = (System.nanoTime() - start) / ITERATIONS;
+
+        byte[] naive = null;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            naive = encodeNaive(forecast);
+        }
+        long naiveEncodeNs = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeNaive(naive);
+        }
+        long naiveDecodeNs = (System.nanoTime() - start) / ITERATIONS;
+
+        Log.i(LOG_TAG, forecast.size() + " days: compact " + compact.length + " bytes, encode "
+                + compactEncodeNs + "ns, decode " + compactDecodeNs + "ns; per-day DataMaps "
+                + naive.length + " bytes, encode " + naiveEncodeNs + "ns, decode "
+                + naiveDecodeNs + "ns");
+
+        assertEquals("Error: Naive layout didn't round trip",
+                forecast.weatherIds[forecast.size() - 1],
+                decodeNaive(naive).weatherIds[forecast.size() - 1]);
+        assertTrue("Error: Compact payload is no smaller than the per-day DataMaps",
+                compact.length < naive.length);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.format.DateUtils;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * {@link DetailCache} holds fully formatted {@link Day}s for the detail view, keyed by location
+ * and date, so that going back to a day (or rotating) doesn't query or format again.  It also
+ * prefetches the days either side of the one being shown.  Any change to the weather data
+ * empties the cache, and a prefetch that was already running when it did is not kept.
+ */
+public class DetailCache {
+
+    // A day and its neighbours, for the current and the previous selection.
+    private static final int MAX_DAYS = 6;
+
+    private static DetailCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Day> mDays = new LruCache<String, Day>(MAX_DAYS);
+    // Bumped each time the cache is emptied, so days loaded before that are dropped
+    private int mGeneration;
+
+    /**
+     * A day of weather, with every string the detail view needs already formatted.
+     */
+    public static class Day {
+        public final int weatherId;
+        public final String dateText;
+        public final String description;
+        public final String high;
+        public final String low;
+        public final String humidity;
+        public final String wind;
+        public final String pressure;
+        public final String forecast;
+
+        Day(int weatherId, String dateText, String description, String high, String low,
+            String humidity, String wind, String pressure, String forecast) {
+            this.weatherId = weatherId;
+            this.dateText = dateText;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+            this.humidity = humidity;
+            this.wind = wind;
+            this.pressure = pressure;
+            this.forecast = forecast;
+        }
+    }
+
+    public static synchronized DetailCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DetailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DetailCache(Context context) {
+        mContext = context;
+        context.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        evictAll();
+                    }
+                });
+    }
+
+    /**
+     * @param uri a weather uri built with buildWeatherLocationWithDate
+     * @return the cached day, or null if it has to be loaded
+     */
+    public synchronized Day get(Uri uri) {
+        return mDays.get(keyFor(uri));
+    }
+
+    public synchronized void put(Uri uri, Day day) {
+        mDays.put(keyFor(uri), day);
+    }
+
+    /**
+     * Caches day unless the cache has been emptied since generation, in which case the data it
+     * was built from may be out of date.
+     */
+    private synchronized void put(Uri uri, Day day, int generation) {
+        if (generation == mGeneration) {
+            mDays.put(keyFor(uri), day);
+        }
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    private synchronized void evictAll() {
+        mGeneration++;
+        mDays.evictAll();
+    }
+
+    /**
+     * Builds a {@link Day} from a cursor positioned on a row of
+     * {@link DetailFragment#DETAIL_COLUMNS}.  Safe to call off the main thread.
+     */
+    public Day buildDay(Cursor data) {
+        Context context = mContext;
+        int weatherId = data.getInt(DetailFragment.COL_WEATHER_CONDITION_ID);
+        long date = data.getLong(DetailFragment.COL_WEATHER_DATE);
+        String dateText = Utility.getFullFriendlyDayString(context, date);
+        String description = Utility.getStringForWeatherCondition(context, weatherId);
+        double high = data.getDouble(DetailFragment.COL_WEATHER_MAX_TEMP);
+        double low = data.getDouble(DetailFragment.COL_WEATHER_MIN_TEMP);
+        return new Day(weatherId,
+                dateText,
+                description,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low),
+                context.getString(R.string.format_humidity,
+                        data.getFloat(DetailFragment.COL_WEATHER_HUMIDITY)),
+                Utility.getFormattedWind(context,
+                        data.getFloat(DetailFragment.COL_WEATHER_WIND_SPEED),
+                        data.getFloat(DetailFragment.COL_WEATHER_DEGREES)),
+                context.getString(R.string.format_pressure,
+                        data.getFloat(DetailFragment.COL_WEATHER_PRESSURE)),
+                String.format("%s - %s - %s/%s", dateText, description, high, low));
+    }
+
+    /**
+     * Loads and formats the days before and after the one in uri in the background, and warms
+     * Glide's memory cache with their art at the given size, so that switching to them is free.
+     * Call it on the main thread.
+     */
+    public void prefetchNeighbours(Uri uri, final int artWidth, final int artHeight) {
+        final String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        final long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        final int generation = getGeneration();
+        new AsyncTask<Void, Void, Day[]>() {
+            @Override
+            protected Day[] doInBackground(Void... params) {
+                return new Day[]{
+                        prefetch(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                locationSetting, date - DateUtils.DAY_IN_MILLIS), generation),
+                        prefetch(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                locationSetting, date + DateUtils.DAY_IN_MILLIS), generation)
+                };
+            }
+
+            @Override
+            protected void onPostExecute(Day[] days) {
+                for (Day day : days) {
+                    if (null != day) {
+                        prefetchArt(day.weatherId, artWidth, artHeight);
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * @return the day in uri, loading and caching it if needed, or null if there isn't one
+     */
+    private Day prefetch(Uri uri, int generation) {
+        Day day = get(uri);
+        if (null == day) {
+            Cursor data = mContext.getContentResolver().query(uri,
+                    DetailFragment.DETAIL_COLUMNS, null, null, null);
+            if (null == data) {
+                return null;
+            }
+            try {
+                if (!data.moveToFirst()) {
+                    return null;
+                }
+                day = buildDay(data);
+            } finally {
+                data.close();
+            }
+            put(uri, day, generation);
+        }
+        return day;
+    }
+
+    /**
+     * Starts loading the art without waiting for it, so a slow download doesn't hold up the
+     * next prefetch or any other AsyncTask.
+     */
+    private void prefetchArt(int weatherId, int artWidth, int artHeight) {
+        if (Utility.usingLocalGraphics(mContext) || artWidth <= 0 || artHeight <= 0) {
+            return;
+        }
+        String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        if (null == artUrl) {
+            return;
+        }
+        // Same request as DetailFragment makes, so it lands on the same cache key.
+        Glide.with(mContext)
+                .load(artUrl)
+                .fitCenter()
+                .into(new SimpleTarget<GlideDrawable>(artWidth, artHeight) {
+                    @Override
+                    public void onResourceReady(GlideDrawable resource,
+                                                GlideAnimation<? super GlideDrawable> glideAnimation) {
+                        // Hands the decoded image over to the memory cache.
+                        Glide.clear(this);
+                    }
+                });
+    }
+
+    private String keyFor(Uri uri) {
+        // The formatted strings depend on the unit preference, and the date text ("Today",
+        // "Tomorrow") on what day it is now, so both are part of the key.
+        return WeatherContract.WeatherEntry.getLocationSettingFromUri(uri) + "/" +
+                WeatherContract.WeatherEntry.getDateFromUri(uri) + "/" +
+                Utility.isMetric(mContext) + "/" +
+                WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+}
@@ -16,9 +16,11 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
@@ -34,6 +36,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -58,7 +61,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
+    static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
             WeatherEntry.COLUMN_DATE,
             WeatherEntry.COLUMN_SHORT_DESC,
@@ -153,10 +156,31 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        DetailCache.Day day = null != mUri ? DetailCache.getInstance(getActivity()).get(mUri) : null;
+        if ( null != day ) {
+            // We've already formatted this day; skip the query and only load if the data changes.
+            bindDay(day);
+            getActivity().getContentResolver().registerContentObserver(mUri, false, mDataObserver);
+        } else {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        getActivity().getContentResolver().unregisterContentObserver(mDataObserver);
+        super.onDestroyView();
+    }
+
+    private final ContentObserver mDataObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            getActivity().getContentResolver().unregisterContentObserver(this);
+            getLoaderManager().initLoader(DETAIL_LOADER, null, DetailFragment.this);
+        }
+    };
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,6 +188,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            getActivity().getContentResolver().unregisterContentObserver(mDataObserver);
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
         }
     }
@@ -192,78 +217,91 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+            DetailCache cache = DetailCache.getInstance(getActivity());
+            DetailCache.Day day = cache.buildDay(data);
+            cache.put(mUri, day);
+            bindDay(day);
+        } else {
+            finishBinding();
+        }
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    private void bindDay(DetailCache.Day day) {
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
+
+        int weatherId = day.weatherId;
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        } else {
+            // Use weather art image
+            Glide.with(this)
+                    .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                    .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                    .crossFade()
+                    .into(mIconView);
+        }
+
+        mDateView.setText(day.dateText);
+
+        mDescriptionView.setText(day.description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, day.description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, day.description));
+
+        mHighTempView.setText(day.high);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, day.high));
+
+        mLowTempView.setText(day.low);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, day.low));
+
+        mHumidityView.setText(day.humidity);
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        mWindView.setText(day.wind);
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
+        mPressureView.setText(day.pressure);
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = day.forecast;
+
+        // Get the days either side ready, with their art at the size it will be shown.
+        prefetchNeighbours();
+
+        finishBinding();
+    }
+
+    private void prefetchNeighbours() {
+        final DetailCache cache = DetailCache.getInstance(getActivity());
+        if (mIconView.getWidth() > 0 && mIconView.getHeight() > 0) {
+            cache.prefetchNeighbours(mUri, mIconView.getWidth(), mIconView.getHeight());
+            return;
         }
+        // Bound from the cache before the first layout, so wait until the icon has a size.
+        final Uri uri = mUri;
+        mIconView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mIconView.getViewTreeObserver().removeOnPreDrawListener(this);
+                cache.prefetchNeighbours(uri, mIconView.getWidth(), mIconView.getHeight());
+                return true;
+            }
+        });
+    }
+
+    private void finishBinding() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
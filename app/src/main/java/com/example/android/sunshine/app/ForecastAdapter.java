@@ -36,19 +36,21 @@ import com.example.android.sunshine.app.data.WeatherContract;
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionIndex {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastCursorLoader.IndexedCursor mCursor;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    private ForecastArtPreloader mArtPreloader;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -88,6 +90,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Must come before ItemChoiceManager registers its observer, or RecyclerView throws.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -142,8 +146,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            if ( null != mArtPreloader ) {
+                mArtPreloader.onArtBound(getItemViewType(position), artUrl,
+                        forecastAdapterViewHolder.mIconView.getWidth(),
+                        forecastAdapterViewHolder.mIconView.getHeight());
+            }
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(artUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -197,6 +207,15 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mUseTodayLayout = useTodayLayout;
     }
 
+    public void setArtPreloader(ForecastArtPreloader artPreloader) {
+        mArtPreloader = artPreloader;
+    }
+
+    int getWeatherConditionId(int position) {
+        mCursor.moveToPosition(position);
+        return mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+    }
+
     public int getSelectedItemPosition() {
         return mICM.getSelectedItemPosition();
     }
@@ -206,6 +225,29 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    /**
+     * The id is the row's date.  A sync replaces every row, giving it a new _id, but the date
+     * stays unique within the location and survives, so the checked day does too.
+     */
+    @Override
+    public long getItemId(int position) {
+        mCursor.moveToPosition(position);
+        return mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        return getPositionForDate(id);
+    }
+
+    /**
+     * @return the position of the forecast for the given date, or RecyclerView.NO_POSITION
+     */
+    public int getPositionForDate(long date) {
+        if ( null == mCursor ) return RecyclerView.NO_POSITION;
+        return mCursor.getPositionForDate(date);
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
@@ -213,7 +255,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+        if ( null == newCursor || newCursor instanceof ForecastCursorLoader.IndexedCursor ) {
+            mCursor = (ForecastCursorLoader.IndexedCursor) newCursor;
+        } else {
+            // Cursors that didn't come through ForecastCursorLoader get indexed here.
+            mCursor = new ForecastCursorLoader.IndexedCursor(newCursor);
+        }
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
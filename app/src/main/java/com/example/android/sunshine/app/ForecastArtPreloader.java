@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.BaseTarget;
+import com.bumptech.glide.request.target.SizeReadyCallback;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link ForecastArtPreloader} asks Glide for the art of the rows just past the edge of the
+ * {@link RecyclerView} in the direction the user is scrolling, so that when those rows are bound
+ * the image is already sitting in Glide's memory cache.  Only used with external art packs.
+ */
+public class ForecastArtPreloader extends RecyclerView.OnScrollListener {
+    private static final String LOG_TAG = ForecastArtPreloader.class.getSimpleName();
+
+    // How many rows past the visible ones we try to have ready.
+    private static final int PRELOAD_AHEAD = 6;
+
+    // Prefetched art may use at most this fraction of the heap (1/32).
+    private static final int MEMORY_BUDGET_DIVISOR = 32;
+
+    // Bytes per pixel of the ARGB_8888 bitmaps Glide hands back.
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+    private final PreloadTarget[] mTargets;
+    private int mNextTarget;
+
+    // Target sizes, per view type, as measured on the last bound row of that type.
+    private final SparseIntArray mWidths = new SparseIntArray();
+    private final SparseIntArray mHeights = new SparseIntArray();
+
+    private boolean mScrollingDown = true;
+    private int mLastFirstVisible = RecyclerView.NO_POSITION;
+    private int mPreloadedThrough = RecyclerView.NO_POSITION;
+
+    // Keys (url + size) of art that finished loading ahead of being bound.
+    private final Set<String> mReady = new HashSet<String>();
+    private int mRequested;
+    private int mHits;
+    private int mMisses;
+
+    public ForecastArtPreloader(Context context, ForecastAdapter adapter) {
+        mContext = context;
+        mAdapter = adapter;
+
+        // Size the pool of outstanding requests so that it never holds more than the budget,
+        // assuming every prefetched image is as large as the today icon.
+        int iconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        long budget = Runtime.getRuntime().maxMemory() / MEMORY_BUDGET_DIVISOR;
+        long perImage = (long) iconSize * iconSize * BYTES_PER_PIXEL;
+        int maxTargets = (int) Math.max(1, Math.min(PRELOAD_AHEAD, budget / perImage));
+        mTargets = new PreloadTarget[maxTargets];
+        for (int i = 0; i < maxTargets; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (Utility.usingLocalGraphics(mContext) ||
+                !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager lm = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = lm.findFirstVisibleItemPosition();
+        int last = lm.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        boolean scrollingDown = dy > 0 || (dy == 0 && first >= mLastFirstVisible);
+        mLastFirstVisible = first;
+        if (scrollingDown != mScrollingDown) {
+            // The rows we were fetching for are now behind us.
+            cancel();
+            mScrollingDown = scrollingDown;
+        }
+
+        int count = mAdapter.getItemCount();
+        if (mScrollingDown) {
+            int start = Math.max(last + 1, mPreloadedThrough + 1);
+            int end = Math.min(last + 1 + mTargets.length, count);
+            for (int position = start; position < end; position++) {
+                preload(position);
+                mPreloadedThrough = position;
+            }
+        } else {
+            int start = mPreloadedThrough == RecyclerView.NO_POSITION ?
+                    first - 1 : Math.min(first - 1, mPreloadedThrough - 1);
+            int end = Math.max(first - mTargets.length, 0);
+            for (int position = start; position >= end; position--) {
+                preload(position);
+                mPreloadedThrough = position;
+            }
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE && mHits + mMisses > 0) {
+            Log.d(LOG_TAG, "Art prefetch: requested " + mRequested + ", hits " + mHits +
+                    ", misses " + mMisses + " (" + Math.round(getHitRate() * 100) + "%)");
+        }
+    }
+
+    /**
+     * Called by the adapter whenever it binds external art, so that we both learn the exact size
+     * Glide will load at and can tell whether the prefetch got there first.
+     */
+    void onArtBound(int viewType, String url, int width, int height) {
+        if (width > 0 && height > 0) {
+            mWidths.put(viewType, width);
+            mHeights.put(viewType, height);
+        }
+        if (mReady.contains(keyFor(viewType, url))) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+    }
+
+    /**
+     * @return the fraction of bound external art that had already been prefetched.
+     */
+    public float getHitRate() {
+        int total = mHits + mMisses;
+        return total == 0 ? 0f : (float) mHits / total;
+    }
+
+    /**
+     * Drops every outstanding prefetch; anything already loaded stays in Glide's memory cache.
+     */
+    public void cancel() {
+        for (PreloadTarget target : mTargets) {
+            Glide.clear(target);
+        }
+        mPreloadedThrough = RecyclerView.NO_POSITION;
+    }
+
+    private void preload(int position) {
+        int weatherId = mAdapter.getWeatherConditionId(position);
+        String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        if (null == url) {
+            return;
+        }
+        int viewType = mAdapter.getItemViewType(position);
+        PreloadTarget target = mTargets[mNextTarget];
+        mNextTarget = (mNextTarget + 1) % mTargets.length;
+
+        // Reusing a target releases its previous image back into the memory cache.
+        Glide.clear(target);
+        target.mKey = keyFor(viewType, url);
+        target.mWidth = getWidth(viewType);
+        target.mHeight = getHeight(viewType);
+        mRequested++;
+        // This has to match the request ForecastAdapter makes, fitCenter included, for the
+        // memory cache keys to line up.
+        Glide.with(mContext)
+                .load(url)
+                .fitCenter()
+                .into(target);
+    }
+
+    private int getWidth(int viewType) {
+        int width = mWidths.get(viewType);
+        return width > 0 ? width : getDefaultSize(viewType);
+    }
+
+    private int getHeight(int viewType) {
+        int height = mHeights.get(viewType);
+        return height > 0 ? height : getDefaultSize(viewType);
+    }
+
+    private int getDefaultSize(int viewType) {
+        return mContext.getResources().getDimensionPixelSize(
+                viewType == ForecastAdapter.VIEW_TYPE_TODAY ? R.dimen.today_icon : R.dimen.list_icon);
+    }
+
+    private String keyFor(int viewType, String url) {
+        return url + "@" + getWidth(viewType) + "x" + getHeight(viewType);
+    }
+
+    private class PreloadTarget extends BaseTarget<GlideDrawable> {
+        String mKey;
+        int mWidth;
+        int mHeight;
+
+        @Override
+        public void getSize(SizeReadyCallback cb) {
+            cb.onSizeReady(mWidth, mHeight);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource, GlideAnimation<? super GlideDrawable> glideAnimation) {
+            mReady.add(mKey);
+        }
+    }
+}
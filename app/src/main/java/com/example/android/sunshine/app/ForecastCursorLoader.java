@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link ForecastCursorLoader} is a {@link CursorLoader} for the forecast list that, while still on
+ * the background thread, walks the result once and indexes it by date.  The date is also the
+ * list's stable id, so restoring a selection never has to scan the cursor on the UI thread.
+ */
+public class ForecastCursorLoader extends CursorLoader {
+
+    public ForecastCursorLoader(Context context, Uri uri, String[] projection, String selection,
+                                String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (null == cursor) {
+            return null;
+        }
+        return new IndexedCursor(cursor);
+    }
+
+    /**
+     * Cursor over the forecast rows, along with a date -> position lookup.
+     */
+    public static class IndexedCursor extends CursorWrapper {
+        private final Map<Long, Integer> mDatePositions;
+
+        IndexedCursor(Cursor cursor) {
+            super(cursor);
+            int count = cursor.getCount();
+            mDatePositions = new HashMap<Long, Integer>(count * 2);
+            for (int i = 0; i < count; i++) {
+                cursor.moveToPosition(i);
+                mDatePositions.put(cursor.getLong(ForecastFragment.COL_WEATHER_DATE), i);
+            }
+            cursor.moveToPosition(-1);
+        }
+
+        /**
+         * @return the position of the row for the given date, or RecyclerView.NO_POSITION
+         */
+        public int getPositionForDate(long date) {
+            Integer position = mDatePositions.get(date);
+            return null == position ? RecyclerView.NO_POSITION : position;
+        }
+    }
+}
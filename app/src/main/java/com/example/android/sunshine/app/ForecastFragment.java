@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -54,6 +53,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
+    private ForecastArtPreloader mArtPreloader;
+    private Cursor mSnapshot;
     private RecyclerView mRecyclerView;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
@@ -65,7 +66,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -200,6 +201,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Fetch external art for the rows about to scroll into view before they're bound.
+        mArtPreloader = new ForecastArtPreloader(getActivity(), mForecastAdapter);
+        mForecastAdapter.setArtPreloader(mArtPreloader);
+        mRecyclerView.addOnScrollListener(mArtPreloader);
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -259,10 +265,26 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        if ( null == mForecastAdapter.getCursor() ) {
+            readSnapshot();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    /**
+     * Shows what we had at the end of the last sync until the loader catches up.  This is read
+     * on the main thread on purpose: the file is a few hundred bytes, memory mapped, and the
+     * point is to have it in the first frame, before the database is even opened.
+     */
+    private void readSnapshot() {
+        mSnapshot = ForecastSnapshot.read(getActivity(), Utility.getPreferredLocation(getActivity()));
+        if ( null != mSnapshot && mSnapshot.getCount() > 0 ) {
+            mForecastAdapter.swapCursor(mSnapshot);
+            StartupTracer.onFirstForecast();
+        }
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
@@ -315,7 +337,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new ForecastCursorLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
@@ -326,6 +348,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
+        closeSnapshot();
+        if ( data.getCount() > 0 ) {
+            StartupTracer.onFirstForecast();
+        }
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -340,16 +366,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -379,11 +396,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mArtPreloader) {
+            mArtPreloader.cancel();
+        }
+        closeSnapshot();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         mForecastAdapter.swapCursor(null);
+        closeSnapshot();
+    }
+
+    private void closeSnapshot() {
+        if ( null != mSnapshot ) {
+            mSnapshot.close();
+            mSnapshot = null;
+        }
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * {@link ForecastSnapshot} keeps a copy of the forecast list rows for the current location in a
+ * small binary file, written at the end of every sync.  On a cold start {@link ForecastFragment}
+ * shows the snapshot straight away and swaps in the real cursor once its loader finishes, so the
+ * first frame has weather in it without waiting for the database.
+ *
+ * File layout (big-endian): magic, version, location setting, row count, then per row
+ * _id, date, short description, max, min, weather id, latitude, longitude.  Strings are an int
+ * byte count followed by UTF-8.
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.snapshot";
+    private static final int MAGIC = 0x534e5348; // "SNSH"
+    // Bump this whenever the layout above changes; older files are then ignored.
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Writes the forecast rows for the preferred location.  Does disk and database work, so
+     * should only be called off the main thread, e.g. from the sync adapter.
+     */
+    public static void write(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor data = context.getContentResolver().query(weatherForLocationUri,
+                ForecastFragment.FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == data) {
+            return;
+        }
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File tmp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, locationSetting);
+            out.writeInt(data.getCount());
+            while (data.moveToNext()) {
+                out.writeLong(data.getLong(ForecastFragment.COL_WEATHER_ID));
+                out.writeLong(data.getLong(ForecastFragment.COL_WEATHER_DATE));
+                writeString(out, data.getString(ForecastFragment.COL_WEATHER_DESC));
+                out.writeDouble(data.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+                out.writeDouble(data.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+                out.writeInt(data.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID));
+                out.writeDouble(data.getDouble(ForecastFragment.COL_COORD_LAT));
+                out.writeDouble(data.getDouble(ForecastFragment.COL_COORD_LONG));
+            }
+            out.close();
+            out = null;
+            // Readers only ever see a complete file.
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't replace forecast snapshot");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing forecast snapshot", e);
+        } finally {
+            data.close();
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing snapshot", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return when the snapshot was last written, i.e. the end of the last sync, or 0 if never
+     */
+    public static long getWriteTime(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME).lastModified();
+    }
+
+    /**
+     * Reads the snapshot through a memory mapping and returns it as a cursor with
+     * {@link ForecastFragment#FORECAST_COLUMNS}, leaving out days that have already passed.
+     *
+     * @return the rows for locationSetting, or null if there is no usable snapshot for it
+     */
+    public static Cursor read(Context context, String locationSetting) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (!locationSetting.equals(readString(buffer))) {
+                return null;
+            }
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            int count = buffer.getInt();
+            MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS, count);
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long date = buffer.getLong();
+                String description = readString(buffer);
+                double max = buffer.getDouble();
+                double min = buffer.getDouble();
+                int weatherId = buffer.getInt();
+                double lat = buffer.getDouble();
+                double lon = buffer.getDouble();
+                if (date < today) {
+                    continue;
+                }
+                // Same order as FORECAST_COLUMNS
+                cursor.addRow(new Object[]{
+                        id, date, description, max, min, locationSetting, weatherId, lat, lon});
+            }
+            return cursor;
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file is no worse than not having one.
+            Log.e(LOG_TAG, "Error reading forecast snapshot", e);
+            return null;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing snapshot", e);
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (null == value ? "" : value).getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -41,7 +41,9 @@ public class ItemChoiceManager {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
+            // An empty adapter means the data is being reset, not that the checked items went
+            // away, so keep the checked ids for when it comes back.
+            if (mAdapter != null && mAdapter.hasStableIds() && mAdapter.getItemCount() > 0)
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
     };
@@ -53,6 +55,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -62,6 +65,18 @@ public class ItemChoiceManager {
      */
     private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
 
+    /**
+     * Adapters with stable IDs that can map an ID straight to its current position implement
+     * this, so that checked items are found in constant time instead of by searching.
+     */
+    public interface PositionIndex {
+        /**
+         * @return the current position of the item with the given ID,
+         * or RecyclerView.NO_POSITION if it is no longer in the data set.
+         */
+        int getPositionForId(long id);
+    }
+
     /**
      * Running state of which positions are currently checked
      */
@@ -158,10 +173,24 @@ public class ItemChoiceManager {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
+        PositionIndex index = mAdapter instanceof PositionIndex ? (PositionIndex) mAdapter : null;
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
+            if (null != index) {
+                // The adapter can tell us exactly where the ID went, however far it moved.
+                final int newPos = index.getPositionForId(id);
+                if (newPos != RecyclerView.NO_POSITION) {
+                    mCheckStates.put(newPos, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, newPos);
+                } else {
+                    mCheckedIdStates.delete(id);
+                    checkedIndex--;
+                }
+                continue;
+            }
+
             final long lastPosId = mAdapter.getItemId(lastPos);
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
@@ -29,6 +29,7 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
@@ -49,12 +50,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTracer.onActivityCreate();
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
-        startService(new Intent(this, WearableSyncService.class));
-
         setContentView(R.layout.activity_main);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -92,6 +92,33 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
+        // Nothing below is needed to show the forecast, so hold it back until we've drawn.
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posting from here runs once this frame has been drawn.
+                content.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupTracer.onFirstFrame();
+                        if (!isFinishing()) {
+                            onFirstFrameDrawn();
+                        }
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Initialization that can wait until the user is already looking at the forecast.
+     */
+    private void onFirstFrameDrawn() {
+        startService(new Intent(this, WearableSyncService.class));
+
         SunshineSyncAdapter.initializeSyncAdapter(this);
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * {@link StartupTracer} records how long {@link MainActivity} takes to draw its first frame and
+ * to show its first forecast.  Launches are split into the first one in this process and later
+ * relaunches.  Neither is a true cold start, since the process and Application already exist by
+ * the time MainActivity.onCreate runs.  Timings are uptime timestamps, logged and kept as running
+ * averages; a start spans several looper messages, so it isn't bracketed with a trace section.
+ */
+public class StartupTracer {
+    private static final String LOG_TAG = StartupTracer.class.getSimpleName();
+
+    private static boolean sProcessHasLaunched;
+
+    private static long sStartTime = -1;
+    private static boolean sFirstInProcess;
+    private static boolean sFirstFrameSeen;
+    private static boolean sFirstForecastSeen;
+
+    private static long sLastTimeToFirstFrame = -1;
+    private static long sLastTimeToFirstForecast = -1;
+
+    private static int sFirstLaunches;
+    private static long sFirstLaunchFirstFrameTotal;
+    private static int sRelaunches;
+    private static long sRelaunchFirstFrameTotal;
+
+    private StartupTracer() {
+    }
+
+    /**
+     * Call at the very top of MainActivity.onCreate.
+     */
+    public static void onActivityCreate() {
+        sStartTime = SystemClock.uptimeMillis();
+        sFirstInProcess = !sProcessHasLaunched;
+        sProcessHasLaunched = true;
+        sFirstFrameSeen = false;
+        sFirstForecastSeen = false;
+        sLastTimeToFirstFrame = -1;
+        sLastTimeToFirstForecast = -1;
+    }
+
+    /**
+     * Call once the activity's first frame has been drawn.
+     */
+    public static void onFirstFrame() {
+        if (sStartTime < 0 || sFirstFrameSeen) {
+            return;
+        }
+        sFirstFrameSeen = true;
+        sLastTimeToFirstFrame = SystemClock.uptimeMillis() - sStartTime;
+        if (sFirstInProcess) {
+            sFirstLaunches++;
+            sFirstLaunchFirstFrameTotal += sLastTimeToFirstFrame;
+        } else {
+            sRelaunches++;
+            sRelaunchFirstFrameTotal += sLastTimeToFirstFrame;
+        }
+        Log.i(LOG_TAG, describeLaunch() + ", first frame after " + sLastTimeToFirstFrame + "ms");
+    }
+
+    /**
+     * Call when forecast rows have first been handed to the list, whether from the database or
+     * the snapshot.
+     */
+    public static void onFirstForecast() {
+        if (sStartTime < 0 || sFirstForecastSeen) {
+            return;
+        }
+        sFirstForecastSeen = true;
+        sLastTimeToFirstForecast = SystemClock.uptimeMillis() - sStartTime;
+        Log.i(LOG_TAG, describeLaunch() + ", first forecast after " + sLastTimeToFirstForecast + "ms");
+    }
+
+    private static String describeLaunch() {
+        return sFirstInProcess ? "First launch in process" : "Relaunch";
+    }
+
+    public static boolean isLastStartFirstInProcess() {
+        return sFirstInProcess;
+    }
+
+    /**
+     * @return milliseconds from onCreate to the first frame of the last start, or -1 if not drawn yet
+     */
+    public static long getLastTimeToFirstFrame() {
+        return sLastTimeToFirstFrame;
+    }
+
+    /**
+     * @return milliseconds from onCreate to the first forecast of the last start, or -1 if none yet
+     */
+    public static long getLastTimeToFirstForecast() {
+        return sLastTimeToFirstForecast;
+    }
+
+    public static long getAverageFirstLaunchFirstFrame() {
+        return sFirstLaunches == 0 ? -1 : sFirstLaunchFirstFrameTotal / sFirstLaunches;
+    }
+
+    public static long getAverageRelaunchFirstFrame() {
+        return sRelaunches == 0 ? -1 : sRelaunchFirstFrameTotal / sRelaunches;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app.gcm;
+
+import android.app.AlarmManager;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.support.v4.app.NotificationCompat;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Turns bursts of weather alerts into a few notifications.  The first alert for a location is
+ * posted straight away; any more within {@link #WINDOW_MS} are merged into one silent update at
+ * the end of the window, listing them all.  An alert with the same text as one seen in the
+ * last {@link #DUPLICATE_MS} is dropped.
+ * <p>
+ * The alerts waiting for that update, and the alerts seen lately, are kept in preferences and
+ * the update is an alarm that starts {@link AlertFlushService}, so they survive the process
+ * being killed once the GCM service has finished.  A location's entries are removed once its
+ * window has passed.
+ */
+class AlertCoalescer {
+
+    private static final String TAG = "AlertCoalescer";
+
+    static final long WINDOW_MS = 30 * DateUtils.SECOND_IN_MILLIS;
+    static final long DUPLICATE_MS = DateUtils.HOUR_IN_MILLIS;
+
+    // Most lines an InboxStyle shows
+    private static final int MAX_LINES = 5;
+
+    // Per location: the alerts shown in its notification, when its window ends (wall clock),
+    // and whether an update is scheduled
+    private static final String PREFS_NAME = "gcm_alerts";
+    private static final String KEY_LINES = "lines_";
+    private static final String KEY_WINDOW_END = "window_end_";
+    private static final String KEY_FLUSH_SCHEDULED = "flush_scheduled_";
+    // Hash of each alert's text to when it was last seen (wall clock), as a JSON object
+    private static final String KEY_SEEN = "seen";
+
+    private static final String URI_SCHEME = "sunshine-alert";
+
+    private static AlertCoalescer sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    private Bitmap mLargeIcon;
+
+    private int mPosted;
+    private int mMerged;
+    private int mDuplicates;
+
+    // Package-private so tests can stand in for a new process.
+    AlertCoalescer(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static synchronized AlertCoalescer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlertCoalescer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether the alert will be shown, either now or in the merged update
+     */
+    boolean offer(String location, String message) {
+        long now = System.currentTimeMillis();
+        ArrayList<String> postNow = null;
+        synchronized (this) {
+            JSONObject seen = readSeen(now - DUPLICATE_MS, now);
+            String hash = Integer.toString(message.hashCode());
+            if (seen.has(hash)) {
+                mDuplicates++;
+                Log.i(TAG, "Dropping repeated alert. " + getCounts());
+                return false;
+            }
+            SharedPreferences.Editor editor = mPrefs.edit();
+            try {
+                seen.put(hash, now);
+                editor.putString(KEY_SEEN, seen.toString());
+            } catch (JSONException e) {
+                Log.w(TAG, "Couldn't remember alert", e);
+            }
+            forgetPassedWindows(editor, location, now);
+
+            long windowEnd = mPrefs.getLong(KEY_WINDOW_END + location, 0);
+            if (now >= windowEnd) {
+                postNow = new ArrayList<>();
+                postNow.add(message);
+                editor.putString(KEY_LINES + location, toJson(postNow))
+                        .putLong(KEY_WINDOW_END + location, now + WINDOW_MS)
+                        .putBoolean(KEY_FLUSH_SCHEDULED + location, false);
+                mPosted++;
+            } else {
+                ArrayList<String> lines = readLines(location);
+                lines.add(message);
+                editor.putString(KEY_LINES + location, toJson(lines));
+                if (!mPrefs.getBoolean(KEY_FLUSH_SCHEDULED + location, false)) {
+                    editor.putBoolean(KEY_FLUSH_SCHEDULED + location, true);
+                    getAlarmManager().set(AlarmManager.RTC, windowEnd, getFlushIntent(location));
+                }
+                mMerged++;
+                Log.i(TAG, "Merging alert for " + location + ". " + getCounts());
+            }
+            // Written before we return, so the GCM service can finish and the process die.
+            editor.commit();
+        }
+        if (postNow != null) {
+            postNotification(location, postNow, false);
+        }
+        return true;
+    }
+
+    /**
+     * Posts the merged update for a location, called from {@link AlertFlushService}.
+     */
+    void flush(String location) {
+        ArrayList<String> lines;
+        synchronized (this) {
+            if (!mPrefs.getBoolean(KEY_FLUSH_SCHEDULED + location, false)) {
+                return;
+            }
+            lines = readLines(location);
+            // Alerts in the next window join this summary rather than sounding again.
+            mPrefs.edit()
+                    .putBoolean(KEY_FLUSH_SCHEDULED + location, false)
+                    .putLong(KEY_WINDOW_END + location, System.currentTimeMillis() + WINDOW_MS)
+                    .commit();
+            if (lines.isEmpty()) {
+                return;
+            }
+            mPosted++;
+        }
+        postNotification(location, lines, true);
+    }
+
+    /**
+     * Drops any update waiting for a location, along with the alerts it would have listed.
+     */
+    synchronized void cancel(String location) {
+        getAlarmManager().cancel(getFlushIntent(location));
+        mPrefs.edit()
+                .remove(KEY_LINES + location)
+                .remove(KEY_WINDOW_END + location)
+                .remove(KEY_FLUSH_SCHEDULED + location)
+                .commit();
+    }
+
+    private AlarmManager getAlarmManager() {
+        return (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    private PendingIntent getFlushIntent(String location) {
+        // The data makes each location's alarm distinct.
+        Intent intent = new Intent(mContext, AlertFlushService.class)
+                .setData(Uri.fromParts(URI_SCHEME, location, null))
+                .putExtra(AlertFlushService.EXTRA_LOCATION, location);
+        return PendingIntent.getService(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private ArrayList<String> readLines(String location) {
+        ArrayList<String> lines = new ArrayList<>();
+        String json = mPrefs.getString(KEY_LINES + location, null);
+        if (json == null) {
+            return lines;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                lines.add(array.getString(i));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable alerts for " + location, e);
+        }
+        return lines;
+    }
+
+    private static String toJson(ArrayList<String> lines) {
+        return new JSONArray(lines).toString();
+    }
+
+    /**
+     * @return the alerts seen between after and now.  Times after now are kept too, so a clock
+     * set back doesn't let repeats through early.
+     */
+    private JSONObject readSeen(long after, long now) {
+        JSONObject seen = new JSONObject();
+        String json = mPrefs.getString(KEY_SEEN, null);
+        if (json == null) {
+            return seen;
+        }
+        try {
+            JSONObject stored = new JSONObject(json);
+            Iterator<String> hashes = stored.keys();
+            while (hashes.hasNext()) {
+                String hash = hashes.next();
+                long time = stored.getLong(hash);
+                if (time >= after || time > now) {
+                    seen.put(hash, time);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable seen alerts", e);
+        }
+        return seen;
+    }
+
+    /**
+     * Removes the entries of every location other than current whose window has passed with no
+     * update waiting, so they don't pile up for every location that ever had an alert.
+     */
+    private void forgetPassedWindows(SharedPreferences.Editor editor, String current, long now) {
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(KEY_WINDOW_END) || !(entry.getValue() instanceof Long)) {
+                continue;
+            }
+            String location = key.substring(KEY_WINDOW_END.length());
+            if (location.equals(current) || (Long) entry.getValue() > now
+                    || mPrefs.getBoolean(KEY_FLUSH_SCHEDULED + location, false)) {
+                continue;
+            }
+            editor.remove(KEY_LINES + location)
+                    .remove(KEY_WINDOW_END + location)
+                    .remove(KEY_FLUSH_SCHEDULED + location);
+        }
+    }
+
+    /**
+     * The large icon is always the same art, so it's decoded once.
+     */
+    private synchronized Bitmap getLargeIcon() {
+        if (mLargeIcon == null) {
+            mLargeIcon = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_storm);
+        }
+        return mLargeIcon;
+    }
+
+    /**
+     * Posts or updates the alert notification for a location.  Each location has its own, so
+     * alerts for one don't replace another's.
+     */
+    private void postNotification(String location, ArrayList<String> lines, boolean update) {
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        PendingIntent contentIntent =
+                PendingIntent.getActivity(mContext, 0, new Intent(mContext, MainActivity.class), 0);
+
+        String latest = lines.get(lines.size() - 1);
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(mContext)
+                        .setSmallIcon(R.drawable.art_clear)
+                        .setLargeIcon(getLargeIcon())
+                        .setContentTitle("Weather Alert!")
+                        .setContentText(latest)
+                        .setOnlyAlertOnce(update)
+                        .setPriority(NotificationCompat.PRIORITY_HIGH);
+        if (lines.size() == 1) {
+            builder.setStyle(new NotificationCompat.BigTextStyle().bigText(latest));
+        } else {
+            String summary = mContext.getString(R.string.gcm_weather_alert_summary,
+                    lines.size(), location);
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(summary);
+            for (int i = lines.size() - 1; i >= Math.max(0, lines.size() - MAX_LINES); i--) {
+                style.addLine(lines.get(i));
+            }
+            builder.setContentText(summary)
+                    .setNumber(lines.size())
+                    .setStyle(style);
+        }
+        builder.setContentIntent(contentIntent);
+        notificationManager.notify(location, MyGcmListenerService.NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * Alerts posted, merged into a later update, and dropped as repeats since the process
+     * started.
+     */
+    synchronized String getCounts() {
+        return "Alerts posted: " + mPosted + ", merged: " + mMerged + ", duplicates: " + mDuplicates;
+    }
+
+    synchronized int getPosted() {
+        return mPosted;
+    }
+
+    synchronized int getMerged() {
+        return mMerged;
+    }
+
+    synchronized int getDuplicates() {
+        return mDuplicates;
+    }
+
+    /**
+     * @return alerts that didn't get a notification of their own
+     */
+    synchronized int getSuppressed() {
+        return mMerged + mDuplicates;
+    }
+}
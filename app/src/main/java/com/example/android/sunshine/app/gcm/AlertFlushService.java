@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app.gcm;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Started by an alarm at the end of a location's alert window to post the merged update.
+ */
+public class AlertFlushService extends IntentService {
+
+    static final String EXTRA_LOCATION = "location";
+
+    public AlertFlushService() {
+        super("AlertFlushService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String location = intent.getStringExtra(EXTRA_LOCATION);
+        if (location != null) {
+            AlertCoalescer.getInstance(this).flush(location);
+        }
+    }
+}
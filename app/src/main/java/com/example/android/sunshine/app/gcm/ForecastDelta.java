@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The forecast days that changed for one location, pushed in a GCM data message so we don't
+ * have to download the whole forecast again.  The message's "delta" value looks like
+ * <pre>
+ * {"loc":"94043","start":1419033600000,"days":[[0,21.5,12,800,"Clear"],[3,18,9,500,"Rain"]]}
+ * </pre>
+ * The start is the UTC midnight of the first day.  Each day is [days after start, max, min,
+ * weather id, description], optionally followed by humidity, pressure, wind speed and wind
+ * direction.  Days we already have are updated with
+ * the fields given; new days are only added when all of them are there.
+ */
+public class ForecastDelta {
+
+    private static final String TAG = "ForecastDelta";
+
+    public static final String EXTRA_DELTA = "delta";
+
+    private static final String KEY_LOCATION = "loc";
+    private static final String KEY_START = "start";
+    private static final String KEY_DAYS = "days";
+
+    // Positions within a day's array
+    private static final String[] DAY_COLUMNS = new String[]{
+            null,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    public final String locationSetting;
+    public final long[] dates;
+    public final ContentValues[] values;
+
+    private ForecastDelta(String locationSetting, long[] dates, ContentValues[] values) {
+        this.locationSetting = locationSetting;
+        this.dates = dates;
+        this.values = values;
+    }
+
+    /**
+     * @return the delta carried by a GCM message, or null if it doesn't carry one
+     */
+    public static ForecastDelta fromMessage(Bundle data) throws JSONException {
+        String json = data.getString(EXTRA_DELTA);
+        return json != null ? parse(json) : null;
+    }
+
+    public static ForecastDelta parse(String json) throws JSONException {
+        JSONObject delta = new JSONObject(json);
+        String locationSetting = delta.getString(KEY_LOCATION);
+        // The start names a day, not an instant: take its UTC date, then store each day the way
+        // the sync adapter does, as the start of that date in local time.
+        int julianStartDay = Time.getJulianDay(delta.getLong(KEY_START), 0);
+        Time dayTime = new Time();
+        JSONArray days = delta.getJSONArray(KEY_DAYS);
+
+        long[] dates = new long[days.length()];
+        ContentValues[] values = new ContentValues[days.length()];
+        for (int i = 0; i < days.length(); i++) {
+            JSONArray day = days.getJSONArray(i);
+            if (day.length() <= 1 || day.length() > DAY_COLUMNS.length) {
+                throw new JSONException("Day " + i + " has " + day.length() + " fields");
+            }
+            dates[i] = dayTime.setJulianDay(julianStartDay + day.getInt(0));
+            ContentValues dayValues = new ContentValues();
+            for (int field = 1; field < day.length(); field++) {
+                String column = DAY_COLUMNS[field];
+                if (day.isNull(field)) {
+                    continue;
+                } else if (WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+                    dayValues.put(column, day.getInt(field));
+                } else if (WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                    dayValues.put(column, day.getString(field));
+                } else {
+                    dayValues.put(column, day.getDouble(field));
+                }
+            }
+            values[i] = dayValues;
+        }
+        return new ForecastDelta(locationSetting, dates, values);
+    }
+
+    /**
+     * Writes the changed days in one transaction.  Does blocking provider work, so call it off
+     * the main thread.
+     *
+     * @return the number of days written, or -1 if the location isn't one we have synced
+     */
+    public int apply(Context context) throws RemoteException, OperationApplicationException {
+        ContentResolver resolver = context.getContentResolver();
+        long locationId = findLocation(resolver);
+        if (locationId == -1) {
+            return -1;
+        }
+        Set<Long> existing = findExistingDates(resolver, locationId);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(dates.length);
+        for (int i = 0; i < dates.length; i++) {
+            if (existing.contains(dates[i])) {
+                String[] selectionArgs = new String[]{Long.toString(locationId), Long.toString(dates[i])};
+                operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                        .withSelection(WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                                + WeatherEntry.COLUMN_DATE + " = ?", selectionArgs)
+                        .withValues(values[i])
+                        .build());
+            } else if (values[i].size() == DAY_COLUMNS.length - 1) {
+                operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                        .withValues(values[i])
+                        .withValue(WeatherEntry.COLUMN_LOC_KEY, locationId)
+                        .withValue(WeatherEntry.COLUMN_DATE, dates[i])
+                        .build());
+            } else {
+                Log.w(TAG, "Skipping partial day " + dates[i] + " that we don't have yet");
+            }
+        }
+        if (operations.isEmpty()) {
+            return 0;
+        }
+        ContentProviderResult[] results =
+                resolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        int written = 0;
+        for (ContentProviderResult result : results) {
+            if (result.uri != null || (result.count != null && result.count > 0)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private long findLocation(ContentResolver resolver) {
+        Cursor cursor = resolver.query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        long locationId = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return locationId;
+    }
+
+    private Set<Long> findExistingDates(ContentResolver resolver, long locationId) {
+        Set<Long> existing = new HashSet<>();
+        Cursor cursor = resolver.query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE},
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationId)},
+                null);
+        if (cursor == null) {
+            return existing;
+        }
+        while (cursor.moveToNext()) {
+            existing.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return existing;
+    }
+}
@@ -16,19 +16,16 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.OperationApplicationException;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
+import android.os.RemoteException;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -61,15 +58,18 @@ public class MyGcmListenerService extends GcmListenerService {
                 Toast.makeText(this, "SenderID string needs to be set", Toast.LENGTH_LONG).show();
             }
             // Not a bad idea to check that the message is coming from your server.
-            if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
+            if ((senderId).equals(from) && data.containsKey(ForecastDelta.EXTRA_DELTA)) {
+                applyForecastDelta(this, data);
+            } else if ((senderId).equals(from)) {
+                // Process message and then post a notification of the received message, unless
+                // it repeats or joins a burst of alerts for the same place.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
                     String weather = jsonObject.getString(EXTRA_WEATHER);
                     String location = jsonObject.getString(EXTRA_LOCATION);
                     String alert =
                             String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    AlertCoalescer.getInstance(this).offer(location, alert);
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -80,31 +80,29 @@ public class MyGcmListenerService extends GcmListenerService {
     }
 
     /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
+     * Writes the forecast days carried by a message and, if they're for the location being
+     * shown, updates everything that shows them, just as a sync would.
      *
-     * @param message The alert message to be posted.
+     * @return the number of days written
      */
-    private void sendNotification(String message) {
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
-
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                        .setContentText(message)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
+    static int applyForecastDelta(Context context, Bundle data) {
+        try {
+            ForecastDelta delta = ForecastDelta.fromMessage(data);
+            if (delta == null) {
+                return 0;
+            }
+            int written = delta.apply(context);
+            Log.i(TAG, "Applied forecast delta for " + delta.locationSetting + ": "
+                    + written + " of " + delta.dates.length + " days");
+            if (written > 0 && delta.locationSetting.equals(Utility.getPreferredLocation(context))) {
+                SunshineSyncAdapter.onWeatherChanged(context);
+            }
+            return Math.max(written, 0);
+        } catch (JSONException e) {
+            Log.w(TAG, "Bad forecast delta", e);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Couldn't apply forecast delta", e);
+        }
+        return 0;
     }
-}
\ No newline at end of file
+}
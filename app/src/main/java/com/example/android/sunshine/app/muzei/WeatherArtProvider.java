@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the weather wallpapers Muzei shows from local files, downloaded once and scaled to the
+ * screen, so changing the wallpaper doesn't need the network after the first time.  The provider
+ * isn't exported; Muzei is granted read access to each uri we hand it.  The least recently used
+ * files are deleted once the directory grows past {@link #MAX_DIR_BYTES}.
+ */
+public class WeatherArtProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherArtProvider.class.getSimpleName();
+
+    public static final String AUTHORITY = "com.example.android.sunshine.app.muzei";
+    private static final String ART_DIR = "muzei";
+    private static final int JPEG_QUALITY = 90;
+    // Room for a few screen sized copies of each condition's art
+    private static final long MAX_DIR_BYTES = 16 * 1024 * 1024;
+
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
+    /**
+     * Returns a content uri for a screen sized copy of the image at imageUrl, downloading it if
+     * we don't have it yet, and lets Muzei read it.  Blocks on the network, so call it off the
+     * main thread.
+     *
+     * @return the local uri, or null if the image couldn't be fetched
+     */
+    public static Uri getLocalArtUri(Context context, String imageUrl) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int width = Math.max(metrics.widthPixels, metrics.heightPixels);
+        int height = Math.min(metrics.widthPixels, metrics.heightPixels);
+        // Wallpapers scroll sideways, so keep the long edge across.
+        String fileName = Utility.getCacheKey(imageUrl) + "_" + width + "x" + height + ".jpg";
+        File dir = getArtDir(context);
+        File file = new File(dir, fileName);
+        if (file.exists()) {
+            // Keeps it at the back of the queue for trimming.
+            file.setLastModified(System.currentTimeMillis());
+        } else if (download(context, imageUrl, width, height, file)) {
+            trim(dir, file);
+        } else {
+            return null;
+        }
+        Uri uri = new Uri.Builder().scheme("content").authority(AUTHORITY).appendPath(fileName).build();
+        context.grantUriPermission(MUZEI_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+
+    /**
+     * Deletes the least recently used files until the directory fits in {@link #MAX_DIR_BYTES},
+     * never deleting keep.
+     */
+    private static void trim(File dir, File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsTime = lhs.lastModified();
+                long rhsTime = rhs.lastModified();
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > MAX_DIR_BYTES; i++) {
+            if (files[i].equals(keep)) {
+                continue;
+            }
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static boolean download(Context context, String imageUrl, int width, int height,
+                                    File file) {
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .load(imageUrl)
+                .asBitmap()
+                .centerCrop()
+                .into(width, height);
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            Bitmap bitmap = target.get();
+            out = new FileOutputStream(tmp);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            return tmp.renameTo(file);
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error caching wallpaper from " + imageUrl, e);
+            return false;
+        } finally {
+            Glide.clear(target);
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tmp, e);
+                }
+            }
+            tmp.delete();
+        }
+    }
+
+    private static File getArtDir(Context context) {
+        File dir = new File(context.getFilesDir(), ART_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(LOG_TAG, "Couldn't create " + dir);
+        }
+        return dir;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        // Only ever hand out files from our own directory, read-only
+        File file = new File(getArtDir(getContext()), uri.getLastPathSegment());
+        if (!file.getParentFile().equals(getArtDir(getContext())) || !file.exists()) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection,
+                      String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+}
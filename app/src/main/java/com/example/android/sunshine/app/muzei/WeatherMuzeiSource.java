@@ -38,6 +38,8 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    private static final String REMOTE_TOKEN_SUFFIX = "|remote";
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -64,12 +66,22 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
+            // Only publish a new wallpaper if we have a valid image, and it isn't the one already up
+            String token = imageUrl + "|" + location;
+            Artwork current = getCurrentArtwork();
+            if (imageUrl != null && (current == null || !token.equals(current.getToken()))) {
+                // Prefer our local, screen sized copy; fall back to the original if we can't get it.
+                // The fallback gets its own token so the next update tries the local copy again.
+                Uri imageUri = WeatherArtProvider.getLocalArtUri(this, imageUrl);
+                if (imageUri == null) {
+                    imageUri = Uri.parse(imageUrl);
+                    token += REMOTE_TOKEN_SUFFIX;
+                }
                 publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
+                        .imageUri(imageUri)
                         .title(desc)
                         .byline(location)
+                        .token(token)
                         .viewIntent(new Intent(this, MainActivity.class))
                         .build());
             }
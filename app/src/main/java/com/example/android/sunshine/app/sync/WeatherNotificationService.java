@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.app.IntentService;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ForecastSnapshot;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Posts the once-a-day weather notification, away from the sync thread.  Today's weather comes
+ * from the {@link ForecastSnapshot} the sync has just written, or from the provider when the
+ * snapshot is missing or doesn't have today.  The large icon is kept on disk
+ * at notification size for each art pack and condition, so only the first notification with a
+ * given art waits on the network, and never for longer than {@link #ART_TIME_OUT_MS}.
+ */
+public class WeatherNotificationService extends IntentService {
+    private static final String LOG_TAG = WeatherNotificationService.class.getSimpleName();
+
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    private static final long ART_TIME_OUT_MS = 5 * DateUtils.SECOND_IN_MILLIS;
+    private static final String ART_DIR = "notification_art";
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    public WeatherNotificationService() {
+        super("WeatherNotificationService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        //checking the last update and notify if it' the first of the day
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String displayNotificationsKey = getString(R.string.pref_enable_notifications_key);
+        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
+                Boolean.parseBoolean(getString(R.string.pref_enable_notifications_default)));
+        if (!displayNotifications) {
+            return;
+        }
+        String lastNotificationKey = getString(R.string.pref_last_notification);
+        long lastSync = prefs.getLong(lastNotificationKey, 0);
+        if (System.currentTimeMillis() - lastSync < DateUtils.DAY_IN_MILLIS) {
+            return;
+        }
+
+        // Last sync was more than 1 day ago, let's send a notification with the weather.
+        Cursor cursor = readToday(Utility.getPreferredLocation(this));
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                int weatherId = cursor.getInt(cursor.getColumnIndexOrThrow(
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+                double high = cursor.getDouble(cursor.getColumnIndexOrThrow(
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+                double low = cursor.getDouble(cursor.getColumnIndexOrThrow(
+                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+                String desc = cursor.getString(cursor.getColumnIndexOrThrow(
+                        WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+
+                notifyWeather(weatherId, high, low, desc);
+
+                //refreshing last sync
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putLong(lastNotificationKey, System.currentTimeMillis());
+                editor.commit();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return a cursor whose first row, if any, is today's weather: from the snapshot when it
+     * has today, else from the provider
+     */
+    private Cursor readToday(String locationSetting) {
+        long now = System.currentTimeMillis();
+        Cursor snapshot = ForecastSnapshot.read(this, locationSetting);
+        if (snapshot != null) {
+            if (snapshot.moveToFirst() && snapshot.getLong(snapshot.getColumnIndexOrThrow(
+                    WeatherContract.WeatherEntry.COLUMN_DATE)) == WeatherContract.normalizeDate(now)) {
+                return snapshot;
+            }
+            snapshot.close();
+        }
+        // No snapshot, or one written for another day: ask the provider.
+        return getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting, now),
+                NOTIFY_WEATHER_PROJECTION, null, null, null);
+    }
+
+    private void notifyWeather(int weatherId, double high, double low, String desc) {
+        Context context = this;
+        Resources resources = context.getResources();
+        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+
+        String title = context.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder mBuilder =
+                new NotificationCompat.Builder(context)
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(getLargeIcon(weatherId))
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(context, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        mBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager mNotificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+    }
+
+    /**
+     * @return the art for the condition at large icon size: from the disk cache, else from the
+     * art pack if it arrives in time (and is then cached), else the bundled art
+     */
+    private Bitmap getLargeIcon(int weatherId) {
+        Resources resources = getResources();
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        String artUrl = Utility.getArtUrlForWeatherCondition(this, weatherId);
+        if (artUrl != null) {
+            // The URL names both the art pack and the condition.
+            File file = new File(new File(getCacheDir(), ART_DIR), Utility.getCacheKey(artUrl)
+                    + "_" + largeIconWidth + "x" + largeIconHeight + ".png");
+            Bitmap largeIcon = BitmapFactory.decodeFile(file.getPath());
+            if (largeIcon != null) {
+                return largeIcon;
+            }
+            FutureTarget<Bitmap> target = Glide.with(this)
+                    .load(artUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(largeIconWidth, largeIconHeight);
+            try {
+                largeIcon = target.get(ART_TIME_OUT_MS, TimeUnit.MILLISECONDS);
+                writeArt(file, largeIcon);
+                // Glide recycles the bitmap once the target is cleared, so hand out a copy.
+                return largeIcon.copy(largeIcon.getConfig(), false);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            } finally {
+                // Cancels a load that timed out, and releases the bitmap of one that didn't.
+                Glide.clear(target);
+            }
+        }
+        Bitmap art = BitmapFactory.decodeResource(resources, artResourceId);
+        if (art == null) {
+            return null;
+        }
+        return Bitmap.createScaledBitmap(art, largeIconWidth, largeIconHeight, true);
+    }
+
+    private static void writeArt(File file, Bitmap bitmap) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't save " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+            tmp.delete();
+        }
+    }
+}
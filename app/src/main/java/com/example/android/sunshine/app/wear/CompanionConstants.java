@@ -4,7 +4,16 @@ public interface CompanionConstants {
 
     String WEATHER_DATA_ITEM_PREFIX = "/weather";
 
+    // Messages: a watch asks for fresh weather, and we tell it what it has is current
+    String REFRESH_PATH = "/weather/refresh";
+    String CURRENT_PATH = "/weather/current";
+
     String KEY_MAX_TEMP = "temp-max";
     String KEY_MIN_TEMP = "temp-min";
     String KEY_IMAGE = "weather-image";
+    // ForecastPayload bytes for the next few days, today first.
+    String KEY_FORECAST = "forecast";
+
+    // Weather icons are sent at this size; 40dp on an xhdpi watch.
+    int ICON_SIZE_PX = 80;
 }
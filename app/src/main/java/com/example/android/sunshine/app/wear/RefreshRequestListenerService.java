@@ -0,0 +1,76 @@
+package com.example.android.sunshine.app.wear;
+
+import android.content.Intent;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastSnapshot;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Answers refresh requests from watches.  If the last sync is recent the watch is served from
+ * what we already have; otherwise one sync is started for however many requests arrive while
+ * it runs.  Either way {@link WearableSyncService} runs next, makes sure the watch has the
+ * current weather and replies to every node that asked.
+ */
+public class RefreshRequestListenerService extends WearableListenerService {
+
+    private static final String TAG = "RefreshRequestListener";
+
+    // A snapshot younger than this is served as it is, without going to the network
+    private static final long FRESH_MS = DateUtils.HOUR_IN_MILLIS;
+    // Requests within this long of a sync we started share it
+    private static final long SYNC_COALESCE_MS = 5 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static final Set<String> sWaitingNodes = new HashSet<>();
+    private static long sLastSyncRequestTime;
+    private static int sServedFromCache;
+    private static int sSyncsStarted;
+    private static int sCoalesced;
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (!CompanionConstants.REFRESH_PATH.equals(messageEvent.getPath())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long snapshotAge = now - ForecastSnapshot.getWriteTime(this);
+
+        synchronized (RefreshRequestListenerService.class) {
+            sWaitingNodes.add(messageEvent.getSourceNodeId());
+            if (snapshotAge < FRESH_MS) {
+                sServedFromCache++;
+                startService(new Intent(this, WearableSyncService.class));
+            } else if (now - sLastSyncRequestTime >= SYNC_COALESCE_MS) {
+                // The sync ends by starting WearableSyncService, which replies, whether or not
+                // it got new weather.
+                sSyncsStarted++;
+                sLastSyncRequestTime = now;
+                SunshineSyncAdapter.syncImmediately(this);
+            } else {
+                sCoalesced++;
+            }
+            Log.i(TAG, "Refresh request from " + messageEvent.getSourceNodeId() + ", data "
+                    + snapshotAge / DateUtils.MINUTE_IN_MILLIS + " minutes old. Served from cache "
+                    + sServedFromCache + ", syncs " + sSyncsStarted + ", coalesced " + sCoalesced);
+        }
+    }
+
+    static synchronized boolean hasWaitingNodes() {
+        return !sWaitingNodes.isEmpty();
+    }
+
+    /**
+     * @return the nodes waiting to hear that their weather is current, which are then forgotten
+     */
+    static synchronized Set<String> takeWaitingNodes() {
+        Set<String> nodes = new HashSet<>(sWaitingNodes);
+        sWaitingNodes.clear();
+        return nodes;
+    }
+}
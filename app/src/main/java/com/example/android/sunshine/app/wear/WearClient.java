@@ -0,0 +1,108 @@
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Data Layer connection for the whole process.  It is opened on first use and kept for a
+ * while after the last one, so back-to-back syncs don't each pay for connection setup.
+ */
+public class WearClient implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    private static final String TAG = "WearClient";
+
+    private static final long CONNECT_TIME_OUT_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+    // Kept connected this long after the last release
+    private static final long IDLE_DISCONNECT_MS = 2 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static WearClient sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mUsers;
+    private int mConnects;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            disconnectIfIdle();
+        }
+    };
+
+    private WearClient(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+    }
+
+    public static synchronized WearClient getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearClient(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Connects if needed, blocking for up to {@link #CONNECT_TIME_OUT_MS}.  Must be called off
+     * the main thread, and each call followed by {@link #release()}, even when it fails.
+     *
+     * @return the connected client, or null if the connection couldn't be made
+     */
+    public GoogleApiClient acquire() {
+        synchronized (this) {
+            mUsers++;
+            mHandler.removeCallbacks(mIdleDisconnect);
+            if (mGoogleApiClient.isConnected()) {
+                return mGoogleApiClient;
+            }
+            mConnects++;
+        }
+        ConnectionResult result = mGoogleApiClient.blockingConnect(CONNECT_TIME_OUT_MS, TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            Log.w(TAG, "Couldn't connect: " + result);
+            return null;
+        }
+        return mGoogleApiClient;
+    }
+
+    public synchronized void release() {
+        if (--mUsers == 0) {
+            mHandler.postDelayed(mIdleDisconnect, IDLE_DISCONNECT_MS);
+        }
+    }
+
+    private synchronized void disconnectIfIdle() {
+        if (mUsers == 0 && mGoogleApiClient.isConnected()) {
+            Log.i(TAG, "Idle, disconnecting after " + mConnects + " connects");
+            mGoogleApiClient.disconnect();
+        }
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        Log.i(TAG, "Connected");
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        Log.i(TAG, "Connection suspended: " + cause);
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult result) {
+        Log.i(TAG, "Connection failed: " + result.toString());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.DrawableRes;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the weather icons PNG-encoded at the size the watch draws them, keyed by drawable id.
+ * Each icon is decoded and encoded once, then kept in memory and in the cache dir, so a sync
+ * normally only hands existing bytes to the Data Layer.
+ */
+public class WearIconCache {
+
+    private static final String TAG = "WearIconCache";
+
+    private static final String DIR = "wear_icons";
+
+    private static final SparseArray<byte[]> sEncoded = new SparseArray<>();
+    private static boolean sPruned;
+
+    private WearIconCache() {
+    }
+
+    /**
+     * @return the icon encoded as a PNG of {@link CompanionConstants#ICON_SIZE_PX} square,
+     * or null if it couldn't be decoded
+     */
+    public static synchronized byte[] getEncodedIcon(Context context, @DrawableRes int drawableId) {
+        byte[] bytes = sEncoded.get(drawableId);
+        if (bytes != null) {
+            return bytes;
+        }
+
+        // Entry names survive a rebuild, ids don't.  The version code keeps an update's new
+        // artwork from being served the old encoding.
+        File file = new File(getDir(context), context.getResources().getResourceEntryName(drawableId)
+                + "_" + CompanionConstants.ICON_SIZE_PX + "_v" + BuildConfig.VERSION_CODE + ".png");
+        bytes = readFile(file);
+        if (bytes == null) {
+            bytes = encode(context, drawableId);
+            if (bytes == null) {
+                return null;
+            }
+            writeFile(file, bytes);
+        }
+        sEncoded.put(drawableId, bytes);
+        return bytes;
+    }
+
+    private static byte[] encode(Context context, @DrawableRes int drawableId) {
+        Log.i(TAG, "Encoding icon " + context.getResources().getResourceEntryName(drawableId));
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), drawableId);
+        if (bitmap == null) {
+            return null;
+        }
+        int size = CompanionConstants.ICON_SIZE_PX;
+        if (bitmap.getWidth() != size || bitmap.getHeight() != size) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, size, size, true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        bitmap.recycle();
+        return byteStream.toByteArray();
+    }
+
+    private static byte[] readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+            return bytes;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading " + file, e);
+            return null;
+        } finally {
+            close(in, file);
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Couldn't save " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + file, e);
+        } finally {
+            close(out, tmp);
+            tmp.delete();
+        }
+    }
+
+    private static void close(Closeable closeable, File file) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing " + file, e);
+            }
+        }
+    }
+
+    private static File getDir(Context context) {
+        File dir = new File(context.getCacheDir(), DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + dir);
+        } else if (!sPruned) {
+            // Drop icons encoded by earlier versions of the app.
+            String suffix = "_v" + BuildConfig.VERSION_CODE + ".png";
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().endsWith(suffix)) {
+                        file.delete();
+                    }
+                }
+            }
+            sPruned = true;
+        }
+        return dir;
+    }
+}
@@ -3,118 +3,291 @@ package com.example.android.sunshine.app.wear;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.Bundle;
-import android.support.annotation.DrawableRes;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
 import android.util.Log;
 
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.Status;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.ByteArrayOutputStream;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.Set;
 
-public class WearableSyncService extends IntentService
-        implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+/**
+ * Sends the current weather to the watch.  Requests that queue up while one is being handled
+ * are merged: only the newest runs, and it reads whatever the provider holds by then.  Failed
+ * sends are retried a few times over the shared {@link WearClient} connection before being
+ * dropped.
+ */
+public class WearableSyncService extends IntentService {
 
     private static final String TAG = "WearableSyncService";
 
-    private static final long CONNECTION_TIME_OUT_MS = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 2 * DateUtils.SECOND_IN_MILLIS;
 
     private static final String[] WEAR_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE
     };
 
     private static final int INDEX_MAX_TEMP = 0;
     private static final int INDEX_MIN_TEMP = 1;
     private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_DATE = 3;
 
-    private GoogleApiClient mGoogleApiClient;
+    // Digest of the last payload the Data Layer accepted.  Kept across processes, since the
+    // sync usually runs in a fresh one.  The Data Layer itself brings new watches up to date.
+    private static final String PREFS_NAME = "wear_sync";
+    private static final String KEY_LAST_DIGEST = "last_digest";
+
+    // Intents started but not yet handled, and when the oldest of them was started (0 if none)
+    private static int sPending;
+    private static long sOldestPendingTime;
+
+    private static int sSendsMade;
+    private static int sSendsAvoided;
+    private static int sMerged;
+    private static int sRetries;
+    private static int sDropped;
+    private static long sTotalLatencyMs;
+    private static long sMaxLatencyMs;
 
     public WearableSyncService() {
         super("WearableSyncService");
     }
 
     @Override
-    public void onCreate() {
-        super.onCreate();
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        synchronized (WearableSyncService.class) {
+            sPending++;
+            if (sOldestPendingTime == 0) {
+                sOldestPendingTime = SystemClock.elapsedRealtime();
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        Log.i(TAG, "Connecting to wearable");
+        long requestTime;
+        synchronized (WearableSyncService.class) {
+            if (--sPending > 0) {
+                // A newer request is queued behind this one and will send the same or newer data.
+                sMerged++;
+                return;
+            }
+            requestTime = sOldestPendingTime;
+            sOldestPendingTime = 0;
+        }
 
-        mGoogleApiClient.blockingConnect(CONNECTION_TIME_OUT_MS, TimeUnit.MILLISECONDS);
+        if (sendCurrent(requestTime)) {
+            // The watches that asked for a refresh now have the latest we know, or at least
+            // won't hear any more from this request, so they can stop waiting.
+            replyWeatherCurrent(RefreshRequestListenerService.takeWaitingNodes());
+        }
+    }
 
+    /**
+     * Sends the current weather unless the watch already has it.
+     *
+     * @return false if a newer request took over, which then replies to the waiting watches
+     */
+    private boolean sendCurrent(long requestTime) {
         String location = Utility.getPreferredLocation(this);
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, WEAR_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
+        if (cursor == null) {
+            return true;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return true;
+            }
             int maxTemp = cursor.getInt(INDEX_MAX_TEMP);
             int minTemp = cursor.getInt(INDEX_MIN_TEMP);
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
 
-            Asset weatherImage = createAssetFromBitmap(
-                    bitmapFromDrawableId(getBaseContext(),
-                            Utility.getIconResourceForWeatherCondition(weatherId)));
+            byte[] icon = WearIconCache.getEncodedIcon(getBaseContext(),
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+
+            byte[] forecast = readForecast(cursor).encode();
+
+            String digest = maxTemp + "|" + minTemp + "|" + Arrays.hashCode(icon)
+                    + "|" + Arrays.hashCode(forecast);
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+            if (digest.equals(prefs.getString(KEY_LAST_DIGEST, null))) {
+                // The watch already has this, so don't wake its radio for it.
+                countAvoided();
+                Log.i(TAG, "Weather unchanged, not sending. " + getSendCounts());
+            } else if (sendWithRetries(maxTemp, minTemp, icon, forecast, requestTime)) {
+                countDelivered(SystemClock.elapsedRealtime() - requestTime);
+                prefs.edit().putString(KEY_LAST_DIGEST, digest).apply();
+                Log.i(TAG, "Data sent. " + getSendCounts());
+            } else {
+                synchronized (WearableSyncService.class) {
+                    return sPending == 0;
+                }
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void replyWeatherCurrent(Set<String> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        WearClient wearClient = WearClient.getInstance(this);
+        try {
+            GoogleApiClient client = wearClient.acquire();
+            if (client == null) {
+                return;
+            }
+            for (String node : nodes) {
+                Status status = Wearable.MessageApi.sendMessage(client, node,
+                        CompanionConstants.CURRENT_PATH, null).await().getStatus();
+                if (!status.isSuccess()) {
+                    Log.w(TAG, "Couldn't tell " + node + " its weather is current: " + status);
+                }
+            }
+        } finally {
+            wearClient.release();
+        }
+    }
 
+    private static ForecastPayload readForecast(Cursor cursor) {
+        ForecastPayload forecast = new ForecastPayload(Math.min(cursor.getCount(), ForecastPayload.MAX_DAYS));
+        for (int i = 0; i < forecast.size() && cursor.moveToPosition(i); i++) {
+            forecast.dates[i] = cursor.getLong(INDEX_DATE);
+            forecast.max[i] = cursor.getInt(INDEX_MAX_TEMP);
+            forecast.min[i] = cursor.getInt(INDEX_MIN_TEMP);
+            forecast.weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+        }
+        return forecast;
+    }
+
+    /**
+     * @return whether the data item was accepted.  False if every attempt failed, or a newer
+     * request arrived meanwhile and will send instead.
+     */
+    private boolean sendWithRetries(int maxTemp, int minTemp, byte[] icon, byte[] forecast,
+                                    long requestTime) {
+        for (int attempt = 1; ; attempt++) {
+            if (send(maxTemp, minTemp, icon, forecast)) {
+                return true;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                countDropped();
+                Log.e(TAG, "Giving up after " + attempt + " attempts. " + getSendCounts());
+                return false;
+            }
+            SystemClock.sleep(RETRY_DELAY_MS * attempt);
+            synchronized (WearableSyncService.class) {
+                if (sPending > 0) {
+                    // Its latency counts from our request.
+                    sMerged++;
+                    sOldestPendingTime = requestTime;
+                    return false;
+                }
+                sRetries++;
+            }
+        }
+    }
+
+    private boolean send(int maxTemp, int minTemp, byte[] icon, byte[] forecast) {
+        WearClient wearClient = WearClient.getInstance(this);
+        try {
+            GoogleApiClient client = wearClient.acquire();
+            if (client == null) {
+                Log.e(TAG, "Failed to send data item - not connected to Google Play Services");
+                return false;
+            }
             final PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(CompanionConstants.WEATHER_DATA_ITEM_PREFIX);
             DataMap data = putDataMapRequest.getDataMap();
-            data.putLong("timestamp", System.currentTimeMillis());
             data.putInt(CompanionConstants.KEY_MAX_TEMP, maxTemp);
             data.putInt(CompanionConstants.KEY_MIN_TEMP, minTemp);
-            data.putAsset(CompanionConstants.KEY_IMAGE, weatherImage);
+            if (icon != null) {
+                data.putAsset(CompanionConstants.KEY_IMAGE, Asset.createFromBytes(icon));
+            }
+            data.putByteArray(CompanionConstants.KEY_FORECAST, forecast);
 
-            if (mGoogleApiClient.isConnected()) {
-                Log.i(TAG, "Sending data: " + data.toString());
-                Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest()).await();
-                Log.i(TAG, "Data sent");
-            } else {
-                Log.e(TAG, "Failed to send data item: " + data.toString() + " - Client disconnected from Google Play Services");
+            Log.i(TAG, "Sending data: " + data.toString());
+            Status status = Wearable.DataApi.putDataItem(client, putDataMapRequest.asPutDataRequest()).await().getStatus();
+            if (!status.isSuccess()) {
+                Log.e(TAG, "Failed to send data item: " + status);
+                return false;
             }
+            return true;
+        } finally {
+            wearClient.release();
         }
-        cursor.close();
+    }
 
-        mGoogleApiClient.disconnect();
+    /**
+     * Runs the service if a watch is waiting to hear back, so it gets an answer even when a sync
+     * fails or changes nothing.
+     */
+    public static void replyToWaitingWatches(Context context) {
+        if (RefreshRequestListenerService.hasWaitingNodes()) {
+            context.startService(new Intent(context, WearableSyncService.class));
+        }
     }
 
-    @Override
-    public void onConnected(Bundle connectionHint) {
-        Log.i(TAG, "Connected");
+    private static synchronized void countAvoided() {
+        sSendsAvoided++;
     }
 
-    @Override
-    public void onConnectionSuspended(int cause) {
+    private static synchronized void countDelivered(long latencyMs) {
+        sSendsMade++;
+        sTotalLatencyMs += latencyMs;
+        sMaxLatencyMs = Math.max(sMaxLatencyMs, latencyMs);
     }
 
-    @Override
-    public void onConnectionFailed(ConnectionResult result) {
-        Log.i(TAG, "Connection failed: " + result.toString());
+    private static synchronized void countDropped() {
+        sDropped++;
+    }
+
+    /**
+     * Delivery counts since the process started.  Every send wakes the watch's radio; latency
+     * runs from the oldest merged request to the data item being accepted.
+     */
+    public static synchronized String getSendCounts() {
+        return "Wear sends made: " + sSendsMade + ", avoided: " + sSendsAvoided
+                + ", merged: " + sMerged + ", retries: " + sRetries + ", dropped: " + sDropped
+                + ", latency avg " + (sSendsMade > 0 ? sTotalLatencyMs / sSendsMade : 0)
+                + "ms, max " + sMaxLatencyMs + "ms";
+    }
+
+    public static synchronized int getSendsMade() {
+        return sSendsMade;
+    }
+
+    public static synchronized int getSendsAvoided() {
+        return sSendsAvoided;
+    }
+
+    public static synchronized int getSendsMerged() {
+        return sMerged;
     }
 
-    private static Bitmap bitmapFromDrawableId(Context context, @DrawableRes int drawableId) {
-        return BitmapFactory.decodeResource(context.getResources(), drawableId);
+    public static synchronized int getRetries() {
+        return sRetries;
     }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+    public static synchronized int getSendsDropped() {
+        return sDropped;
     }
 }
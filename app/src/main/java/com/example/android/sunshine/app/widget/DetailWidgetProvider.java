@@ -7,7 +7,11 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
 import android.widget.RemoteViews;
@@ -15,6 +19,8 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -22,7 +28,20 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetProvider extends AppWidgetProvider {
+    private static final String[] FINGERPRINT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // What each Detail widget's list is currently showing
+    static final WidgetUpdateGate sUpdateGate = new WidgetUpdateGate("Detail");
+    private static long sLastQueryTime = -1;
+
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // The host is asking for views, so don't assume it still has what we sent before
+        sUpdateGate.forget(appWidgetIds);
         // Perform this loop procedure for each App Widget that belongs to this provider
         for (int appWidgetId : appWidgetIds) {
             RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_detail);
@@ -58,11 +77,83 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
-                    new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+            final Context appContext = context.getApplicationContext();
+            final long requestTime = SystemClock.elapsedRealtime();
+            final PendingResult result = goAsync();
+            // Work out off the main thread whether the list would actually change
+            new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    try {
+                        notifyChangedWidgets(appContext, requestTime);
+                    } finally {
+                        result.finish();
+                    }
+                    return null;
+                }
+            }.execute();
+        }
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        sUpdateGate.forget(appWidgetIds);
+    }
+
+    private void notifyChangedWidgets(Context context, long requestTime) {
+        // Broadcasts that arrived before the last check read the data have nothing new for us
+        if (requestTime <= sLastQueryTime) {
+            return;
+        }
+        sLastQueryTime = SystemClock.elapsedRealtime();
+
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, getClass()));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        int fingerprint = getDataFingerprint(context);
+        int[] changedIds = new int[appWidgetIds.length];
+        int changed = 0;
+        for (int appWidgetId : appWidgetIds) {
+            if (sUpdateGate.shouldPush(appWidgetId, fingerprint)) {
+                changedIds[changed++] = appWidgetId;
+            }
+        }
+        if (changed > 0) {
+            int[] ids = new int[changed];
+            System.arraycopy(changedIds, 0, ids, 0, changed);
+            appWidgetManager.notifyAppWidgetViewDataChanged(ids, R.id.widget_list);
+        }
+        sUpdateGate.logCounts();
+    }
+
+    /**
+     * Fingerprint of everything the list rows are rendered from: the forecast rows themselves,
+     * the units they're shown in, the art pack and today's date (rows say "Today", "Tomorrow").
+     */
+    private int getDataFingerprint(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+        Cursor data = context.getContentResolver().query(weatherForLocationUri,
+                FINGERPRINT_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        int fingerprint = WidgetUpdateGate.fingerprint(location, Utility.isMetric(context),
+                Utility.getArtUrlForWeatherCondition(context, 800),
+                WeatherContract.normalizeDate(System.currentTimeMillis()));
+        if (data != null) {
+            while (data.moveToNext()) {
+                fingerprint = 31 * fingerprint + WidgetUpdateGate.fingerprint(
+                        data.getLong(0), data.getInt(1), data.getDouble(2), data.getDouble(3));
+            }
+            data.close();
         }
+        return fingerprint;
     }
 
     /**
@@ -7,13 +7,15 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
@@ -42,10 +44,41 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Upper bound on the downsampled art kept for the list rows
+    private static final int ART_CACHE_BYTES = 1024 * 1024;
+
+    private static class ArtEntry {
+        final FutureTarget<Bitmap> target;
+        final Bitmap bitmap;
+
+        ArtEntry(FutureTarget<Bitmap> target, Bitmap bitmap) {
+            this.target = target;
+            this.bitmap = bitmap;
+        }
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private String locationSetting = null;
+
+            // Art for the rows, downsampled to the icon size and keyed by url, so rows with the
+            // same condition share one bitmap.
+            private final LruCache<String, ArtEntry> artCache =
+                    new LruCache<String, ArtEntry>(ART_CACHE_BYTES) {
+                        @Override
+                        protected int sizeOf(String key, ArtEntry entry) {
+                            return entry.bitmap.getRowBytes() * entry.bitmap.getHeight();
+                        }
+
+                        @Override
+                        protected void entryRemoved(boolean evicted, String key,
+                                                    ArtEntry oldValue, ArtEntry newValue) {
+                            // Gives the bitmap back to Glide
+                            Glide.clear(oldValue.target);
+                        }
+                    };
 
             @Override
             public void onCreate() {
@@ -70,15 +103,48 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                locationSetting = location;
+                if (data != null &&
+                        !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    loadArt();
+                }
                 Binder.restoreCallingIdentity(identityToken);
             }
 
+            /**
+             * Fetches the art for each distinct condition in the data once, at the size of the
+             * list icon, so getViewAt never waits on the network or sends a full size image.
+             */
+            private void loadArt() {
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                for (int i = 0; data.moveToPosition(i); i++) {
+                    int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    String url = Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, weatherId);
+                    if (url == null || artCache.get(url) != null) {
+                        continue;
+                    }
+                    FutureTarget<Bitmap> target = Glide.with(DetailWidgetRemoteViewsService.this)
+                            .load(url)
+                            .asBitmap()
+                            .fitCenter()
+                            .into(iconSize, iconSize);
+                    try {
+                        artCache.put(url, new ArtEntry(target, target.get()));
+                    } catch (InterruptedException | ExecutionException e) {
+                        Log.e(LOG_TAG, "Error retrieving large icon from " + url, e);
+                        Glide.clear(target);
+                    }
+                }
+            }
+
             @Override
             public void onDestroy() {
                 if (data != null) {
                     data.close();
                     data = null;
                 }
+                artCache.evictAll();
             }
 
             @Override
@@ -92,6 +158,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         data == null || !data.moveToPosition(position)) {
                     return null;
                 }
+                long startTime = SystemClock.elapsedRealtime();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
@@ -100,14 +167,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                    ArtEntry art = artCache.get(weatherArtResourceUrl);
+                    if (art != null) {
+                        weatherArtImage = art.bitmap;
                     }
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
@@ -134,13 +196,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                Log.v(LOG_TAG, "Row " + position + " built in " +
+                        (SystemClock.elapsedRealtime() - startTime) + "ms");
                 return views;
             }
 
@@ -25,7 +25,11 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -50,12 +54,33 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    // small, default and large
+    private static final int LAYOUT_BUCKETS = 3;
+
+    // Layout chosen for each widget id, kept across updates
+    private static final SparseIntArray sLayoutForWidget = new SparseIntArray();
+    private static PendingIntent sLaunchPendingIntent;
+
+    // Extra holding SystemClock.elapsedRealtime() of when a data update was broadcast
+    static final String EXTRA_REQUEST_TIME = "request_time";
+    private static long sLastQueryTime = -1;
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        // Broadcasts that arrived before the last update read the data have nothing new for us
+        long requestTime = intent.getLongExtra(EXTRA_REQUEST_TIME, -1);
+        if (requestTime >= 0 && requestTime <= sLastQueryTime) {
+            Log.d(LOG_TAG, "Skipping update already covered by an earlier one");
+            return;
+        }
+        sLastQueryTime = SystemClock.elapsedRealtime();
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
@@ -85,20 +110,51 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
+        long startTime = SystemClock.elapsedRealtime();
+
+        // Sort the widgets into layout buckets, so each layout is built only once
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<int[]> buckets = new SparseArray<int[]>(LAYOUT_BUCKETS);
+        SparseIntArray bucketSizes = new SparseIntArray(LAYOUT_BUCKETS);
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+            int layoutId = getLayoutForWidget(appWidgetManager, appWidgetId, intent,
+                    defaultWidth, largeWidth);
+            int[] ids = buckets.get(layoutId);
+            if (null == ids) {
+                ids = new int[appWidgetIds.length];
+                buckets.put(layoutId, ids);
+            }
+            int size = bucketSizes.get(layoutId);
+            ids[size] = appWidgetId;
+            bucketSizes.put(layoutId, size + 1);
+        }
+
+        PendingIntent pendingIntent = getLaunchPendingIntent();
+        WidgetUpdateGate gate = TodayWidgetProvider.sUpdateGate;
+        for (int i = 0; i < buckets.size(); i++) {
+            int layoutId = buckets.keyAt(i);
+
+            // Leave out widgets already showing exactly this
+            int fingerprint = WidgetUpdateGate.fingerprint(layoutId, weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature);
+            int[] bucket = buckets.valueAt(i);
+            int[] ids = new int[bucketSizes.get(layoutId)];
+            int size = 0;
+            for (int j = 0; j < ids.length; j++) {
+                if (gate.shouldPush(bucket[j], fingerprint)) {
+                    ids[size++] = bucket[j];
+                }
+            }
+            if (size == 0) {
+                continue;
+            }
+            if (size < ids.length) {
+                int[] trimmed = new int[size];
+                System.arraycopy(ids, 0, trimmed, 0, size);
+                ids = trimmed;
             }
+
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
@@ -111,13 +167,54 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on every widget with this layout
+            appWidgetManager.updateAppWidget(ids, views);
+        }
+
+        Log.d(LOG_TAG, "Updated " + appWidgetIds.length + " widgets in " + buckets.size() +
+                " layouts, " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+        gate.logCounts();
+    }
+
+    /**
+     * Create an Intent to launch MainActivity.  It's the same for every widget, so we only
+     * make it once.
+     */
+    private PendingIntent getLaunchPendingIntent() {
+        if (null == sLaunchPendingIntent) {
+            Intent launchIntent = new Intent(this, MainActivity.class);
+            sLaunchPendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        }
+        return sLaunchPendingIntent;
+    }
+
+    /**
+     * Find the correct layout based on the widget's width.  Widths only change through
+     * onAppWidgetOptionsChanged, so we remember the answer until the provider tells us otherwise.
+     */
+    private int getLayoutForWidget(AppWidgetManager appWidgetManager, int appWidgetId,
+                                   Intent intent, int defaultWidth, int largeWidth) {
+        synchronized (sLayoutForWidget) {
+            if (intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID) == appWidgetId) {
+                sLayoutForWidget.delete(appWidgetId);
+            }
+            int layoutId = sLayoutForWidget.get(appWidgetId);
+            if (0 != layoutId) {
+                return layoutId;
+            }
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+            if (widgetWidth >= largeWidth) {
+                layoutId = R.layout.widget_today_large;
+            } else if (widgetWidth >= defaultWidth) {
+                layoutId = R.layout.widget_today;
+            } else {
+                layoutId = R.layout.widget_today_small;
+            }
+            sLayoutForWidget.put(appWidgetId, layoutId);
+            return layoutId;
         }
     }
 
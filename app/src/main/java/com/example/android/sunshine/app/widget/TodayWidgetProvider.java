@@ -20,6 +20,7 @@ import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
@@ -32,22 +33,37 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
+    // What each Today widget is currently showing, shared with TodayWidgetIntentService
+    static final WidgetUpdateGate sUpdateGate = new WidgetUpdateGate("Today");
+
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // The host is asking for views, so don't assume it still has what we sent before
+        sUpdateGate.forget(appWidgetIds);
         context.startService(new Intent(context, TodayWidgetIntentService.class));
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        sUpdateGate.forget(appWidgetId);
+        // Let the service know this widget's size, and so possibly its layout, has changed
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId));
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            context.startService(new Intent(context, TodayWidgetIntentService.class)
+                    .putExtra(TodayWidgetIntentService.EXTRA_REQUEST_TIME,
+                            SystemClock.elapsedRealtime()));
         }
     }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        sUpdateGate.forget(appWidgetIds);
+    }
 }
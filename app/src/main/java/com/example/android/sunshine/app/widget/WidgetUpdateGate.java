@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.util.Log;
+import android.util.SparseIntArray;
+
+/**
+ * Remembers a fingerprint of what each widget was last rendered from, so that a data update
+ * which wouldn't change anything on screen isn't pushed to the widget host.  Also counts how
+ * many updates were pushed and how many were skipped.
+ */
+public class WidgetUpdateGate {
+    private static final String LOG_TAG = WidgetUpdateGate.class.getSimpleName();
+
+    private final String mName;
+    private final SparseIntArray mFingerprints = new SparseIntArray();
+    private int mPushed;
+    private int mSkipped;
+
+    WidgetUpdateGate(String name) {
+        mName = name;
+    }
+
+    /**
+     * @return true if the widget should be updated, i.e. it has not yet been rendered from
+     * inputs with this fingerprint.  Assumes the caller then does update it.
+     */
+    public synchronized boolean shouldPush(int appWidgetId, int fingerprint) {
+        int index = mFingerprints.indexOfKey(appWidgetId);
+        if (index >= 0 && mFingerprints.valueAt(index) == fingerprint) {
+            mSkipped++;
+            return false;
+        }
+        mFingerprints.put(appWidgetId, fingerprint);
+        mPushed++;
+        return true;
+    }
+
+    /**
+     * Forgets the given widgets, so that their next update is always pushed.  Use this when the
+     * host needs the views again (onUpdate, a resize) or when the widgets are deleted.
+     */
+    public synchronized void forget(int... appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mFingerprints.delete(appWidgetId);
+        }
+    }
+
+    public synchronized int getPushedCount() {
+        return mPushed;
+    }
+
+    public synchronized int getSkippedCount() {
+        return mSkipped;
+    }
+
+    public synchronized void logCounts() {
+        Log.d(LOG_TAG, mName + " widget updates: pushed " + mPushed + ", skipped " + mSkipped);
+    }
+
+    /**
+     * Combines the inputs of a rendering into a single fingerprint.
+     */
+    public static int fingerprint(Object... inputs) {
+        int result = 17;
+        for (Object input : inputs) {
+            result = 31 * result + (null == input ? 0 : input.hashCode());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Benchmarks WatchFaceRenderer against an offscreen canvas, for round and square screens in
+    interactive, ambient and low-bit ambient mode.  Each case draws thousands of frames a second
+    apart, as the face would see them, and reports CPU time and allocations per frame.
+
+    A case fails if a frame allocates at all, or if frames take more CPU time than the budgets
+    below.  The budgets are a few times what a current watch measures, so they catch a
+    regression like per-frame text measuring or bitmap scaling without being flaky.  Tighten
+    them when the logged numbers come down.
+ */
+public class TestRenderBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestRenderBenchmark.class.getSimpleName();
+
+    private static final int WARM_UP_FRAMES = 100;
+    private static final int FRAMES = 5000;
+
+    private static final int ROUND_SIZE = 320;
+    private static final int SQUARE_SIZE = 280;
+
+    // CPU time budgets per frame
+    private static final long INTERACTIVE_BUDGET_NS = TimeUnit.MICROSECONDS.toNanos(1500);
+    private static final long AMBIENT_BUDGET_NS = TimeUnit.MICROSECONDS.toNanos(1500);
+    // The first frame of a day draws the layer as well
+    private static final long LAYER_BUILD_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(15);
+
+    private long mNoon;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Midday, so no run crosses into another day and rebuilds its layer.
+        Calendar calendar = new GregorianCalendar();
+        calendar.set(2015, Calendar.DECEMBER, 20, 12, 0, 0);
+        mNoon = calendar.getTimeInMillis();
+    }
+
+    private WatchFaceRenderer createRenderer(boolean round) {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(getContext().getResources());
+        renderer.setTimeZone(TimeZone.getDefault());
+        renderer.setRound(round);
+
+        ForecastPayload forecast = new ForecastPayload(ForecastPayload.MAX_DAYS);
+        long midnight = mNoon - TimeUnit.HOURS.toMillis(12);
+        for (int i = 0; i < forecast.size(); i++) {
+            forecast.dates[i] = midnight + TimeUnit.DAYS.toMillis(i);
+            forecast.max[i] = 20 + i;
+            forecast.min[i] = 10 - i;
+            forecast.weatherIds[i] = 800 + i % 5;
+        }
+        Bitmap icon = BitmapFactory.decodeResource(getContext().getResources(), R.drawable.ic_rain);
+        renderer.setWeather(21, 9, icon, forecast.encode(), mNoon);
+        return renderer;
+    }
+
+    /**
+     * Draws the frames and fails if they allocate or go over budget.
+     */
+    private void benchmark(String name, boolean round, boolean ambient, boolean lowBit,
+                           long budgetNs) {
+        WatchFaceRenderer renderer = createRenderer(round);
+        renderer.setLowBitAmbient(lowBit);
+        renderer.setAmbient(ambient);
+
+        int size = round ? ROUND_SIZE : SQUARE_SIZE;
+        Canvas canvas = new Canvas(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, size, size);
+
+        long start = Debug.threadCpuTimeNanos();
+        renderer.draw(canvas, bounds, mNoon);
+        long firstFrameNs = Debug.threadCpuTimeNanos() - start;
+
+        long time = mNoon;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            renderer.draw(canvas, bounds, time += 1000);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            renderer.draw(canvas, bounds, time += 1000);
+        }
+        long frameNs = (Debug.threadCpuTimeNanos() - start) / FRAMES;
+        int allocations = Debug.getThreadAllocCount();
+        int allocatedBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, name + ": first frame " + firstFrameNs / 1000 + "us, then "
+                + frameNs / 1000 + "us CPU and " + (float) allocations / FRAMES
+                + " allocations (" + allocatedBytes + " bytes in all) per frame over "
+                + FRAMES + " frames");
+
+        assertEquals("Error: " + name + " frames allocated", 0, allocations);
+        assertTrue("Error: " + name + " frames took " + frameNs + "ns, budget is " + budgetNs,
+                frameNs <= budgetNs);
+        assertTrue("Error: " + name + " first frame took " + firstFrameNs + "ns, budget is "
+                + LAYER_BUILD_BUDGET_NS, firstFrameNs <= LAYER_BUILD_BUDGET_NS);
+    }
+
+    public void testRoundInteractive() {
+        benchmark("Round interactive", true, false, false, INTERACTIVE_BUDGET_NS);
+    }
+
+    public void testRoundAmbient() {
+        benchmark("Round ambient", true, true, false, AMBIENT_BUDGET_NS);
+    }
+
+    public void testRoundLowBitAmbient() {
+        benchmark("Round low-bit ambient", true, true, true, AMBIENT_BUDGET_NS);
+    }
+
+    public void testSquareInteractive() {
+        benchmark("Square interactive", false, false, false, INTERACTIVE_BUDGET_NS);
+    }
+
+    public void testSquareAmbient() {
+        benchmark("Square ambient", false, true, false, AMBIENT_BUDGET_NS);
+    }
+
+    public void testSquareLowBitAmbient() {
+        benchmark("Square low-bit ambient", false, true, true, AMBIENT_BUDGET_NS);
+    }
+}
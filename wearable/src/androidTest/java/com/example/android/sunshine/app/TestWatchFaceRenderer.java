@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Draws the watch face into an offscreen bitmap and checks that a frame doesn't allocate or
+    redraw the cached layers.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int FRAMES = 1000;
+    private static final int SIZE = 320;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private long mNoon;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(getContext().getResources());
+        mRenderer.setTimeZone(TimeZone.getDefault());
+
+        // Midday, so the frames below never cross into another day.
+        Calendar calendar = new GregorianCalendar();
+        calendar.set(2015, Calendar.DECEMBER, 20, 12, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mNoon = calendar.getTimeInMillis();
+
+        ForecastPayload forecast = new ForecastPayload(ForecastPayload.MAX_DAYS);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        for (int i = 0; i < forecast.size(); i++) {
+            forecast.dates[i] = calendar.getTimeInMillis() + TimeUnit.DAYS.toMillis(i);
+            forecast.max[i] = 20 + i;
+            forecast.min[i] = 10 - i;
+            forecast.weatherIds[i] = 800 + i % 5;
+        }
+        Bitmap icon = BitmapFactory.decodeResource(getContext().getResources(), R.drawable.ic_clear);
+        mRenderer.setWeather(21, 9, icon, forecast.encode(), mNoon);
+
+        Bitmap target = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(target);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    private int countAllocations() {
+        // The first frame formats the time and date.
+        mRenderer.draw(mCanvas, mBounds, mNoon);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            // One frame a second, so the minute rolls over a few times too.
+            mRenderer.draw(mCanvas, mBounds, mNoon + TimeUnit.SECONDS.toMillis(i));
+        }
+        long frameNs = (System.nanoTime() - start) / FRAMES;
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, FRAMES + " frames, " + frameNs + "ns and "
+                + (float) allocations / FRAMES + " allocations per frame");
+        return allocations;
+    }
+
+    public void testInteractiveFrameDoesNotAllocate() {
+        assertEquals("Error: Interactive frames allocated", 0, countAllocations());
+    }
+
+    public void testLayersAreReusedAcrossFrames() {
+        countAllocations();
+        assertEquals("Error: Layer was redrawn during the same day", 1, mRenderer.getLayerBuildCount());
+
+        mRenderer.setWeather(22, 8, null, null, mNoon);
+        mRenderer.draw(mCanvas, mBounds, mNoon);
+        assertEquals("Error: Layer wasn't redrawn for new weather", 2, mRenderer.getLayerBuildCount());
+    }
+
+    public void testNextChangeIsNextMinuteOrStaleness() {
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        long time = mNoon + 1500;
+        long nextMinute = (time / minute + 1) * minute;
+        assertEquals("Error: Next change isn't the next minute",
+                nextMinute, mRenderer.getNextChangeTime(time));
+
+        long staleTime = mNoon + WearableConstants.WEATHER_STALE_MS;
+        mRenderer.setWeather(21, 9, null, null, mNoon + 20000);
+        assertEquals("Error: Next change isn't when the weather goes stale",
+                staleTime + 20000, mRenderer.getNextChangeTime(staleTime + 10000));
+    }
+
+    public void testAmbientFrameDoesNotAllocate() {
+        mRenderer.setLowBitAmbient(true);
+        mRenderer.setAmbient(true);
+        assertEquals("Error: Ambient frames allocated", 0, countAllocations());
+    }
+}
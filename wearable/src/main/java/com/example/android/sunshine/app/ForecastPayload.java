@@ -0,0 +1,83 @@
+package com.example.android.sunshine.app;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A few days of forecast as sent by the phone, packed into one small byte array.  Icons aren't
+ * sent, {@link WeatherIcons} picks ours from the condition id.
+ *
+ * Layout (big-endian): version byte, day count byte, first date as millis, then per day
+ * a byte of days after the first date, max, min and condition id as shorts.
+ * The phone has a copy of this class; keep the two in step and bump VERSION on any change.
+ */
+public class ForecastPayload {
+
+    public static final int VERSION = 1;
+
+    public static final int MAX_DAYS = 7;
+
+    private static final int HEADER_BYTES = 1 + 1 + 8;
+    private static final int DAY_BYTES = 1 + 2 + 2 + 2;
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    public final long[] dates;
+    public final int[] max;
+    public final int[] min;
+    public final int[] weatherIds;
+
+    public ForecastPayload(int days) {
+        dates = new long[days];
+        max = new int[days];
+        min = new int[days];
+        weatherIds = new int[days];
+    }
+
+    public int size() {
+        return dates.length;
+    }
+
+    public byte[] encode() {
+        int days = Math.min(size(), MAX_DAYS);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + days * DAY_BYTES);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) days);
+        long first = days > 0 ? dates[0] : 0;
+        buffer.putLong(first);
+        for (int i = 0; i < days; i++) {
+            // Rounded, so a daylight saving change doesn't move a day.
+            buffer.put((byte) Math.round((dates[i] - first) / (double) DAY_MS));
+            buffer.putShort((short) max[i]);
+            buffer.putShort((short) min[i]);
+            buffer.putShort((short) weatherIds[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return the decoded forecast, or null if bytes is null, malformed or from another version
+     */
+    public static ForecastPayload decode(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.get() != VERSION) {
+            return null;
+        }
+        int days = buffer.get() & 0xff;
+        long first = buffer.getLong();
+        if (days > MAX_DAYS || days > buffer.remaining() / DAY_BYTES) {
+            return null;
+        }
+        ForecastPayload forecast = new ForecastPayload(days);
+        for (int i = 0; i < days; i++) {
+            forecast.dates[i] = first + buffer.get() * DAY_MS;
+            forecast.max[i] = buffer.getShort();
+            forecast.min[i] = buffer.getShort();
+            forecast.weatherIds[i] = buffer.getShort();
+        }
+        return forecast;
+    }
+}
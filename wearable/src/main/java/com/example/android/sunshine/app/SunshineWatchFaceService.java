@@ -20,17 +20,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
@@ -38,32 +32,23 @@ import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 import java.lang.ref.WeakReference;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face with the weather. In interactive mode it only wakes when the minute changes
+ * or the weather goes stale. On devices with low-bit ambient mode, the text is drawn without
+ * anti-aliasing in ambient mode.
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Handler message id for redrawing in interactive mode when something on the face changes.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MSG_UPDATE_TIME = 0;
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * Handler message id for showing new weather from {@link WeatherState}.
      */
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final int MSG_WEATHER_CHANGED = 1;
 
     @Override
     public Engine onCreateEngine() {
@@ -85,6 +70,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     case MSG_UPDATE_TIME:
                         engine.handleUpdateTimeMessage();
                         break;
+                    case MSG_WEATHER_CHANGED:
+                        engine.showLatestWeather();
+                        break;
                 }
             }
         }
@@ -93,72 +81,43 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint bgPaint;
-        Paint timePaint;
-        Paint datePaint;
-        Paint tempPaint;
         boolean mAmbient;
-        Calendar calendar;
 
-        int tempMax;
-        int tempMin;
+        WatchFaceRenderer renderer;
+
+        // When the weather being shown reached the watch, 0 if there is none
+        long mWeatherReceivedTime;
 
-        Bitmap weatherImage;
+        // Redraws while visible and interactive, logged when the face is hidden
+        int mTimerWakes;
+        int mWeatherInvalidations;
+        long mVisibleSince;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                calendar.clear(Calendar.ZONE_OFFSET);
-                calendar.setTimeInMillis(System.currentTimeMillis());
+                renderer.setTimeZone(TimeZone.getDefault());
+                invalidate();
             }
         };
 
-        final BroadcastReceiver weatherUpdateReceiver = new BroadcastReceiver() {
+        // Called on the listener service's thread, so just hand over to ours.
+        final WeatherState.Listener mWeatherListener = new WeatherState.Listener() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                tempMax = intent.getIntExtra(WearableConstants.KEY_TEMP_MAX, -1);
-                tempMin = intent.getIntExtra(WearableConstants.KEY_TEMP_MIN, -1);
-
-                weatherImage = intent.getParcelableExtra(WearableConstants.KEY_IMAGE);
-
-                Log.d("SunshineWatchFace", "Broadcast received: [max=" + tempMax + ";min=" + tempMin + "]");
+            public void onWeatherChanged(Weather weather) {
+                if (!mUpdateTimeHandler.hasMessages(MSG_WEATHER_CHANGED)) {
+                    mUpdateTimeHandler.sendEmptyMessage(MSG_WEATHER_CHANGED);
+                }
             }
         };
 
-        int mTapCount;
-
-        float mXOffset;
-        float mYOffset;
-
-        float dateXOffset;
-        float dateYOffset;
-
-        float tempXOffset;
-        float tempYOffset;
-
-        float lineWidth;
-        float lineYOffset;
-
-        int defaultMargin;
-        int centerLineOffset;
-        int iconSize;
-        int tempHorizontalOffset;
-
-        DateFormat format = new SimpleDateFormat("EEE, MMM dd yyyy");
-
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
+        // The snapshot the renderer was last given
+        Weather mShownWeather;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
 
-            LocalBroadcastManager.getInstance(SunshineWatchFaceService.this.getBaseContext())
-                    .registerReceiver(weatherUpdateReceiver, new IntentFilter(WearableConstants.WEATHER_UPDATE_ACTION));
-
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFaceService.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
@@ -166,61 +125,67 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true)
                     .build());
 
-            Resources resources = SunshineWatchFaceService.this.getResources();
+            renderer = new WatchFaceRenderer(SunshineWatchFaceService.this.getResources());
 
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-            dateYOffset = resources.getDimension(R.dimen.date_y_offset);
-
-            tempYOffset = resources.getDimension(R.dimen.temp_y_offset);
-
-            lineWidth = resources.getDimension(R.dimen.line_width);
-            lineYOffset = resources.getDimension(R.dimen.line_y_offset);
-
-            iconSize = (int) resources.getDimension(R.dimen.icon_size);
-            tempHorizontalOffset = (int) resources.getDimension(R.dimen.temp_horizontal_offset);
-
-            bgPaint = new Paint();
-            bgPaint.setColor(resources.getColor(R.color.background));
-
-            timePaint = new Paint();
-            timePaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            datePaint = createTextPaint(resources.getColor(R.color.digital_text_light));
+            WeatherState.addListener(mWeatherListener);
+            if (WeatherState.get() == null) {
+                // Show the last weather we had until the phone sends more.
+                Weather last = WeatherStore.read(SunshineWatchFaceService.this);
+                if (last != null) {
+                    WeatherState.setIfEmpty(last);
+                }
+            }
+            showLatestWeather();
+        }
 
-            tempPaint = createTextPaint(resources.getColor(R.color.digital_text_light));
+        /**
+         * Gives the renderer the latest weather, if it has changed since last time.
+         */
+        private void showLatestWeather() {
+            Weather weather = WeatherState.get();
+            if (weather == null || weather == mShownWeather) {
+                return;
+            }
+            mShownWeather = weather;
+            mWeatherReceivedTime = weather.receivedTime;
+            renderer.setWeather(weather.tempMax, weather.tempMin, weather.image, weather.forecast,
+                    weather.receivedTime);
+            mWeatherInvalidations++;
+            if (shouldTimerBeRunning()) {
+                // Redraws now and reschedules, since the weather now goes stale at a new time.
+                updateTimer();
+            } else {
+                invalidate();
+            }
 
-            calendar = new GregorianCalendar();
+            Log.d("SunshineWatchFace", "Weather changed: [max=" + weather.tempMax + ";min=" + weather.tempMin + "]");
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            LocalBroadcastManager.getInstance(SunshineWatchFaceService.this.getBaseContext()).unregisterReceiver(weatherUpdateReceiver);
+            mUpdateTimeHandler.removeMessages(MSG_WEATHER_CHANGED);
+            WeatherState.removeListener(mWeatherListener);
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            paint.setTextAlign(Paint.Align.CENTER);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
 
             if (visible) {
                 registerReceiver();
+                mVisibleSince = System.currentTimeMillis();
+                mTimerWakes = 0;
+                mWeatherInvalidations = 0;
+                WeatherRefreshService.requestIfOld(SunshineWatchFaceService.this, mWeatherReceivedTime);
 
                 // Update time zone in case it changed while we weren't visible.
-                calendar.setTimeZone(TimeZone.getDefault());
-                calendar.setTimeInMillis(System.currentTimeMillis());
+                renderer.setTimeZone(TimeZone.getDefault());
             } else {
                 unregisterReceiver();
+                Log.d("SunshineWatchFace", "Visible for " + (System.currentTimeMillis() - mVisibleSince)
+                        + "ms: " + mTimerWakes + " timer wakes, " + mWeatherInvalidations + " weather updates");
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -248,32 +213,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
-
-            // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            timePaint.setTextSize(textSize);
-
-            datePaint.setTextSize(resources.getDimension(isRound ? R.dimen.date_text_size_round : R.dimen.date_text_size));
-            dateXOffset = resources.getDimension(isRound ? R.dimen.date_x_offset_round : R.dimen.date_x_offset);
-
-            tempXOffset = resources.getDimension(isRound ? R.dimen.temp_x_offset_round : R.dimen.temp_x_offset);
-
-            defaultMargin = (int) resources.getDimension(isRound ? R.dimen.default_margin : R.dimen.default_margin);
-            centerLineOffset = (int) resources.getDimension(isRound ? R.dimen.center_line_offset : R.dimen.center_line_offset);
-
-            tempPaint.setTextSize(resources.getDimension(isRound ? R.dimen.temp_text_size_round : R.dimen.temp_text_size));
+            renderer.setRound(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            renderer.setLowBitAmbient(properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false));
         }
 
         @Override
@@ -287,8 +233,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    timePaint.setAntiAlias(!inAmbientMode);
+                renderer.setAmbient(inAmbientMode);
+                if (!inAmbientMode) {
+                    WeatherRefreshService.requestIfOld(SunshineWatchFaceService.this, mWeatherReceivedTime);
                 }
                 invalidate();
             }
@@ -300,81 +247,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            drawBackground(canvas, bounds);
-
-            int lineY = drawLine(canvas, bounds);
-
-            calendar.setTimeInMillis(System.currentTimeMillis());
-
-            int dateYTop = drawDate(canvas, bounds, lineY);
-
-            drawTime(canvas, bounds, dateYTop);
-
-            int tempBaseLine = lineY + textHeightInPx(tempPaint);
-
-            int left = drawTemperature(canvas, bounds, tempBaseLine);
-
-            if (weatherImage != null) {
-                Rect imageBound = new Rect(left - iconSize, lineY, left, lineY + iconSize);
-                canvas.drawBitmap(weatherImage, null, imageBound, null);
-            }
-        }
-
-        private void drawBackground(Canvas canvas, Rect bounds) {
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), bgPaint);
-            }
-        }
-
-        /**
-         * @return line y
-         */
-        private int drawLine(Canvas canvas, Rect bounds) {
-            int xStart = (int) (bounds.centerX() - lineWidth / 2);
-            int xEnd = (int) (bounds.centerX() + lineWidth / 2);
-            int lineY = bounds.centerY() + centerLineOffset;
-            canvas.drawLine(xStart, lineY, xEnd, lineY, datePaint);
-            return lineY;
-        }
-
-        /**
-         * @return date top line y
-         */
-        private int drawDate(Canvas canvas, Rect bounds, int lineY) {
-            int dateY = lineY - defaultMargin;
-
-            String date = format.format(new Date(calendar.getTimeInMillis()));
-            canvas.drawText(date, bounds.centerX(), dateY, datePaint);
-
-            return dateY - textHeightInPx(datePaint);
-        }
-
-        private void drawTime(Canvas canvas, Rect bounds, int dateTopY) {
-            String time = String.format("%d:%02d", calendar.get(Calendar.HOUR), calendar.get(Calendar.MINUTE));
-            canvas.drawText(time, bounds.centerX(), dateTopY, timePaint);
-        }
-
-        /**
-         * @return left X of temp text
-         */
-        private int drawTemperature(Canvas canvas, Rect bounds, int yBaseline) {
-            String temp = String.format("%d\u00B0 - %d\u00B0", tempMax, tempMin);
-            int x = bounds.centerX() + tempHorizontalOffset;
-            canvas.drawText(temp, x, yBaseline, tempPaint);
-            return x - (int) (tempPaint.measureText(temp) / 2);
-        }
-
-        private int textHeightInPx(Paint paint) {
-            Paint.FontMetricsInt p = paint.getFontMetricsInt();
-            return Math.abs(p.ascent) + Math.abs(p.descent);
-        }
-
-        private void drawDebugBaseLine(Canvas canvas, Rect bounds, int yBaseline) {
-            if (BuildConfig.DEBUG) {
-                canvas.drawLine(0, yBaseline, bounds.right, yBaseline, datePaint);
-            }
+            renderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -397,14 +270,15 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Redraws, then sleeps until the next time the face would look different: the next
+         * minute, or the weather going stale.
          */
         private void handleUpdateTimeMessage() {
+            mTimerWakes++;
             invalidate();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long delayMs = renderer.getNextChangeTime(timeMs) - timeMs;
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
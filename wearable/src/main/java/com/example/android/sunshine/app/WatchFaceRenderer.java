@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.SparseArray;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the Sunshine watch face.  Kept apart from the engine so it can be driven against an
+ * offscreen canvas.
+ *
+ * {@link #draw} runs every second in interactive mode and must not allocate: the time is
+ * formatted into a char buffer when the minute changes, the date when the day changes, and the
+ * weather text when new weather arrives.  Font metrics and bounds rects are kept too.
+ *
+ * Everything except the time is drawn into a cached layer bitmap per mode (interactive, ambient
+ * and low-bit ambient), so a frame is one bitmap blit plus the time text.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    /**
+     * How many days after today the forecast row shows.
+     */
+    private static final int FORECAST_DAYS_SHOWN = 3;
+
+    private static final int LOW_BIT_ALPHA_THRESHOLD = 0x80;
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+    private static final int LAYER_LOW_BIT_AMBIENT = 2;
+
+    private final Resources mResources;
+
+    private final Paint mBgPaint;
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mTempPaint;
+    private final Paint mForecastPaint;
+    private final Paint mIconPaint;
+    private final int mTempColor;
+    private final int mStaleColor;
+
+    private final float mLineWidth;
+    private final int mDefaultMargin;
+    private final int mCenterLineOffset;
+    private final int mIconSize;
+    private final int mTempHorizontalOffset;
+    private final int mForecastIconSize;
+    private final int mForecastColumnWidth;
+
+    // Text heights for the current text sizes, see updateTextHeights()
+    private int mDateHeight;
+    private int mTempHeight;
+    private int mForecastHeight;
+
+    private final Calendar mCalendar = new GregorianCalendar();
+    private final DateFormat mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy");
+
+    // "hh:mm" at most
+    private final char[] mTimeChars = new char[5];
+    private int mTimeLength;
+    private int mFormattedMinute = -1;
+
+    private String mDateText;
+    private int mFormattedDay = -1;
+
+    private String mTempText;
+    private float mTempTextWidth;
+
+    // Today's icon at icon_size, and its 1-bit version for low-bit ambient made when first needed
+    private Bitmap mWeatherImage;
+    private Bitmap mWeatherImageLowBit;
+    private long mWeatherReceivedTime;
+    // Whether the layers were drawn with the weather dimmed as out of date
+    private boolean mLayersStale;
+
+    /** Forecast for the next few days, with icons and temperatures ready to draw. */
+    private ForecastPayload mForecast;
+    private Bitmap[] mForecastIcons;
+    // Forecast icons at forecast_icon_size by drawable id, so a repeat condition isn't decoded again
+    private final SparseArray<Bitmap> mForecastIconCache = new SparseArray<>();
+    private String[] mForecastTemps;
+
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    // Everything but the time is drawn into a cached bitmap per mode, and redrawn only when
+    // the weather, the date or the text sizes change.
+    private final Bitmap[] mLayers = new Bitmap[3];
+    private final boolean[] mLayerValid = new boolean[3];
+    private final Canvas mLayerCanvas = new Canvas();
+    private final Rect mLayerBounds = new Rect();
+    private int mLayerBuilds;
+
+    // Where the time goes, worked out while drawing the layers
+    private int mTimeBaseline;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+
+        mLineWidth = resources.getDimension(R.dimen.line_width);
+        mDefaultMargin = (int) resources.getDimension(R.dimen.default_margin);
+        mCenterLineOffset = (int) resources.getDimension(R.dimen.center_line_offset);
+        mIconSize = (int) resources.getDimension(R.dimen.icon_size);
+        mTempHorizontalOffset = (int) resources.getDimension(R.dimen.temp_horizontal_offset);
+        mForecastIconSize = (int) resources.getDimension(R.dimen.forecast_icon_size);
+        mForecastColumnWidth = (int) resources.getDimension(R.dimen.forecast_column_width);
+
+        mBgPaint = new Paint();
+        mBgPaint.setColor(resources.getColor(R.color.background));
+
+        mTimePaint = createTextPaint(resources.getColor(R.color.digital_text));
+        mDatePaint = createTextPaint(resources.getColor(R.color.digital_text_light));
+        mTempPaint = createTextPaint(resources.getColor(R.color.digital_text_light));
+        mTempColor = mTempPaint.getColor();
+        mStaleColor = resources.getColor(R.color.digital_text_stale);
+        // Icons are scaled to size up front and drawn 1:1, so no filtering.
+        mIconPaint = new Paint();
+        mForecastPaint = createTextPaint(resources.getColor(R.color.digital_text_light));
+        mForecastPaint.setTextSize(resources.getDimension(R.dimen.forecast_text_size));
+
+        setRound(false);
+        setWeather(0, 0, null, null, 0);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        paint.setTextAlign(Paint.Align.CENTER);
+        return paint;
+    }
+
+    /**
+     * Loads the text sizes that have alternate values for round watches.
+     */
+    void setRound(boolean isRound) {
+        mTimePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
+        mDatePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.date_text_size_round : R.dimen.date_text_size));
+        mTempPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.temp_text_size_round : R.dimen.temp_text_size));
+        updateTextHeights();
+        if (mTempText != null) {
+            mTempTextWidth = mTempPaint.measureText(mTempText);
+        }
+        invalidateLayers();
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+        updateAntiAlias();
+    }
+
+    /**
+     * Whether the display supports fewer bits for each color in ambient mode. When true, we
+     * disable anti-aliasing in ambient mode.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        updateAntiAlias();
+    }
+
+    private void updateAntiAlias() {
+        boolean antiAlias = !(mLowBitAmbient && mAmbient);
+        mTimePaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mTempPaint.setAntiAlias(antiAlias);
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        // Force the time and date to be formatted again.
+        mFormattedMinute = -1;
+        mFormattedDay = -1;
+        invalidateLayers();
+    }
+
+    /**
+     * @param receivedTime when the watch got this weather, or 0 if it isn't real weather
+     */
+    void setWeather(int max, int min, Bitmap image, byte[] forecastBytes, long receivedTime) {
+        mWeatherImage = image != null ? scaleIcon(image, mIconSize) : null;
+        mWeatherImageLowBit = null;
+        mWeatherReceivedTime = receivedTime;
+        mTempText = String.format("%d\u00B0 - %d\u00B0", max, min);
+        mTempTextWidth = mTempPaint.measureText(mTempText);
+        setForecast(ForecastPayload.decode(forecastBytes));
+        invalidateLayers();
+    }
+
+    private void setForecast(ForecastPayload payload) {
+        mForecast = payload;
+        if (payload == null) {
+            mForecastIcons = null;
+            mForecastTemps = null;
+            return;
+        }
+        mForecastIcons = new Bitmap[payload.size()];
+        mForecastTemps = new String[payload.size()];
+        for (int i = 0; i < payload.size(); i++) {
+            int iconId = WeatherIcons.getIconResourceForWeatherCondition(payload.weatherIds[i]);
+            if (iconId != -1) {
+                Bitmap icon = mForecastIconCache.get(iconId);
+                if (icon == null) {
+                    icon = scaleIcon(BitmapFactory.decodeResource(mResources, iconId), mForecastIconSize);
+                    mForecastIconCache.put(iconId, icon);
+                }
+                mForecastIcons[i] = icon;
+            }
+            mForecastTemps[i] = String.format("%d\u00B0 %d\u00B0", payload.max[i], payload.min[i]);
+        }
+    }
+
+    void draw(Canvas canvas, Rect bounds, long timeMillis) {
+        mCalendar.setTimeInMillis(timeMillis);
+        updateTimeText();
+
+        boolean stale = isWeatherStale(timeMillis);
+        if (stale != mLayersStale) {
+            mLayersStale = stale;
+            invalidateLayers();
+        }
+
+        int layer = mAmbient ? (mLowBitAmbient ? LAYER_LOW_BIT_AMBIENT : LAYER_AMBIENT) : LAYER_INTERACTIVE;
+        Bitmap bitmap = mLayers[layer];
+        if (!mLayerValid[layer] || bitmap == null
+                || bitmap.getWidth() != bounds.width() || bitmap.getHeight() != bounds.height()) {
+            buildLayer(layer, bounds.width(), bounds.height(), timeMillis);
+        }
+
+        canvas.drawBitmap(mLayers[layer], bounds.left, bounds.top, null);
+        drawTime(canvas, bounds.centerX(), bounds.top + mTimeBaseline);
+    }
+
+    /**
+     * Draws everything but the time into the cached bitmap for a layer.
+     */
+    private void buildLayer(int layer, int width, int height, long timeMillis) {
+        Bitmap bitmap = mLayers[layer];
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mLayers[layer] = bitmap;
+        }
+        mLayerBounds.set(0, 0, width, height);
+        mLayerCanvas.setBitmap(bitmap);
+        Canvas canvas = mLayerCanvas;
+        Rect bounds = mLayerBounds;
+
+        // Weather we haven't heard about for a while is dimmed.
+        mTempPaint.setColor(mLayersStale ? mStaleColor : mTempColor);
+        mIconPaint.setAlpha(layer == LAYER_LOW_BIT_AMBIENT
+                ? 0xff : Color.alpha(mLayersStale ? mStaleColor : mTempColor));
+
+        drawBackground(canvas, bounds);
+
+        int lineY = drawLine(canvas, bounds);
+
+        mTimeBaseline = drawDate(canvas, bounds, lineY);
+
+        int tempBaseLine = lineY + mTempHeight;
+
+        int left = drawTemperature(canvas, bounds, tempBaseLine);
+
+        if (mWeatherImage != null) {
+            Bitmap icon = mWeatherImage;
+            if (layer == LAYER_LOW_BIT_AMBIENT) {
+                if (mWeatherImageLowBit == null) {
+                    mWeatherImageLowBit = toLowBit(mWeatherImage);
+                }
+                icon = mWeatherImageLowBit;
+            }
+            canvas.drawBitmap(icon, left - mIconSize, lineY, mIconPaint);
+        }
+
+        if (!mAmbient) {
+            drawForecast(canvas, bounds, lineY + Math.max(mIconSize, mTempHeight), timeMillis);
+        }
+
+        mLayerCanvas.setBitmap(null);
+        mLayerValid[layer] = true;
+        mLayerBuilds++;
+    }
+
+    private boolean isWeatherStale(long timeMillis) {
+        return mWeatherReceivedTime > 0
+                && timeMillis >= mWeatherReceivedTime + WearableConstants.WEATHER_STALE_MS;
+    }
+
+    /**
+     * The face only shows hours and minutes, so nothing changes until the next minute, or until
+     * the weather goes stale if that comes first.  Date changes fall on a minute too.
+     *
+     * @return the next time at or after which a frame would look different from one at timeMillis
+     */
+    long getNextChangeTime(long timeMillis) {
+        long next = timeMillis - timeMillis % MINUTE_MS + MINUTE_MS;
+        long staleTime = mWeatherReceivedTime + WearableConstants.WEATHER_STALE_MS;
+        if (mWeatherReceivedTime > 0 && staleTime > timeMillis && staleTime < next) {
+            next = staleTime;
+        }
+        return next;
+    }
+
+    /**
+     * Marks every layer for rebuilding on its next frame.
+     */
+    private void invalidateLayers() {
+        for (int i = 0; i < mLayerValid.length; i++) {
+            mLayerValid[i] = false;
+        }
+    }
+
+    /**
+     * @return how many times a layer has been drawn, to check they are reused across frames
+     */
+    int getLayerBuildCount() {
+        return mLayerBuilds;
+    }
+
+    /**
+     * Formats the time and date again if the minute or the day has changed since last time.
+     */
+    private void updateTimeText() {
+        int minute = mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+        if (minute != mFormattedMinute) {
+            mFormattedMinute = minute;
+            // Same as String.format("%d:%02d", HOUR, MINUTE), without the garbage.
+            int hour = mCalendar.get(Calendar.HOUR);
+            int minutes = mCalendar.get(Calendar.MINUTE);
+            int i = 0;
+            if (hour >= 10) {
+                mTimeChars[i++] = (char) ('0' + hour / 10);
+            }
+            mTimeChars[i++] = (char) ('0' + hour % 10);
+            mTimeChars[i++] = ':';
+            mTimeChars[i++] = (char) ('0' + minutes / 10);
+            mTimeChars[i++] = (char) ('0' + minutes % 10);
+            mTimeLength = i;
+        }
+
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day != mFormattedDay) {
+            mFormattedDay = day;
+            mDateText = mDateFormat.format(mCalendar.getTime());
+            invalidateLayers();
+        }
+    }
+
+    private void drawBackground(Canvas canvas, Rect bounds) {
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBgPaint);
+        }
+    }
+
+    /**
+     * @return line y
+     */
+    private int drawLine(Canvas canvas, Rect bounds) {
+        int xStart = (int) (bounds.centerX() - mLineWidth / 2);
+        int xEnd = (int) (bounds.centerX() + mLineWidth / 2);
+        int lineY = bounds.centerY() + mCenterLineOffset;
+        canvas.drawLine(xStart, lineY, xEnd, lineY, mDatePaint);
+        return lineY;
+    }
+
+    /**
+     * @return date top line y
+     */
+    private int drawDate(Canvas canvas, Rect bounds, int lineY) {
+        int dateY = lineY - mDefaultMargin;
+        canvas.drawText(mDateText, bounds.centerX(), dateY, mDatePaint);
+        return dateY - mDateHeight;
+    }
+
+    private void drawTime(Canvas canvas, int x, int dateTopY) {
+        canvas.drawText(mTimeChars, 0, mTimeLength, x, dateTopY, mTimePaint);
+    }
+
+    /**
+     * @return left X of temp text
+     */
+    private int drawTemperature(Canvas canvas, Rect bounds, int yBaseline) {
+        int x = bounds.centerX() + mTempHorizontalOffset;
+        canvas.drawText(mTempText, x, yBaseline, mTempPaint);
+        return x - (int) (mTempTextWidth / 2);
+    }
+
+    /**
+     * Draws the days after today in a row of icons with temperatures underneath.
+     */
+    private void drawForecast(Canvas canvas, Rect bounds, int top, long timeMillis) {
+        if (mForecast == null) {
+            return;
+        }
+        // Dates are local midnights, so the first one still ahead of us is tomorrow.
+        int first = 0;
+        while (first < mForecast.size() && mForecast.dates[first] <= timeMillis) {
+            first++;
+        }
+        int days = Math.min(FORECAST_DAYS_SHOWN, mForecast.size() - first);
+        int x = bounds.centerX() - (days - 1) * mForecastColumnWidth / 2;
+        int textBaseline = top + mForecastIconSize + mForecastHeight;
+        for (int i = first; i < first + days; i++, x += mForecastColumnWidth) {
+            if (mForecastIcons[i] != null) {
+                canvas.drawBitmap(mForecastIcons[i], x - mForecastIconSize / 2, top, null);
+            }
+            canvas.drawText(mForecastTemps[i], x, textBaseline, mForecastPaint);
+        }
+    }
+
+    /**
+     * @return icon as an ARGB_8888 bitmap of size x size, so drawing it never scales
+     */
+    private static Bitmap scaleIcon(Bitmap icon, int size) {
+        if (icon.getWidth() == size && icon.getHeight() == size
+                && icon.getConfig() == Bitmap.Config.ARGB_8888) {
+            return icon;
+        }
+        Bitmap scaled = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(scaled);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        canvas.drawBitmap(icon, null, new Rect(0, 0, size, size), paint);
+        return scaled;
+    }
+
+    /**
+     * @return a white silhouette of icon, each pixel fully on or off, for low-bit ambient
+     * screens that can't show colour or partial alpha
+     */
+    private static Bitmap toLowBit(Bitmap icon) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        int[] pixels = new int[width * height];
+        icon.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Color.alpha(pixels[i]) >= LOW_BIT_ALPHA_THRESHOLD ? Color.WHITE : Color.TRANSPARENT;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private void updateTextHeights() {
+        mDateHeight = textHeightInPx(mDatePaint);
+        mTempHeight = textHeightInPx(mTempPaint);
+        mForecastHeight = textHeightInPx(mForecastPaint);
+    }
+
+    private static int textHeightInPx(Paint paint) {
+        Paint.FontMetricsInt p = paint.getFontMetricsInt();
+        return Math.abs(p.ascent) + Math.abs(p.descent);
+    }
+}
@@ -1,10 +1,21 @@
 package com.example.android.sunshine.app;
 
-public interface WearableConstants {
+import java.util.concurrent.TimeUnit;
 
-    String WEATHER_UPDATE_ACTION = "com.example.android.sunshine.app.WEATHER_UPDATE";
+public interface WearableConstants {
 
     String KEY_TEMP_MAX = "temp-max";
     String KEY_TEMP_MIN = "temp-min";
     String KEY_IMAGE = "weather-image";
+    String KEY_FORECAST = "forecast";
+
+    // Messages: we ask the phone for fresh weather, and it tells us what we have is current
+    String REFRESH_PATH = "/weather/refresh";
+    String CURRENT_PATH = "/weather/current";
+
+    // Weather older than this is refreshed from the phone when the face wakes up
+    long REFRESH_AFTER_MS = TimeUnit.HOURS.toMillis(4);
+
+    // The phone syncs every 3 hours; weather older than two missed syncs is shown as stale.
+    long WEATHER_STALE_MS = TimeUnit.HOURS.toMillis(9);
 }
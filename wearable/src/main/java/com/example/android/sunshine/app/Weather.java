@@ -0,0 +1,26 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+
+/**
+ * The weather the watch last heard from the phone.
+ */
+public class Weather {
+
+    public final int tempMax;
+    public final int tempMin;
+    /** Today's icon at icon_size, or null if the phone didn't send one. */
+    public final Bitmap image;
+    /** {@link ForecastPayload} bytes, or null. */
+    public final byte[] forecast;
+    /** When the watch received this, in {@link System#currentTimeMillis()} time. */
+    public final long receivedTime;
+
+    public Weather(int tempMax, int tempMin, Bitmap image, byte[] forecast, long receivedTime) {
+        this.tempMax = tempMax;
+        this.tempMin = tempMin;
+        this.image = image;
+        this.forecast = forecast;
+        this.receivedTime = receivedTime;
+    }
+}
@@ -1,11 +1,10 @@
 package com.example.android.sunshine.app;
 
-import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -20,13 +19,15 @@ import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 
+import static com.example.android.sunshine.app.WearableConstants.CURRENT_PATH;
+import static com.example.android.sunshine.app.WearableConstants.KEY_FORECAST;
 import static com.example.android.sunshine.app.WearableConstants.KEY_IMAGE;
 import static com.example.android.sunshine.app.WearableConstants.KEY_TEMP_MAX;
 import static com.example.android.sunshine.app.WearableConstants.KEY_TEMP_MIN;
-import static com.example.android.sunshine.app.WearableConstants.WEATHER_UPDATE_ACTION;
 
 public class WeatherListenerService extends WearableListenerService
         implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
@@ -34,9 +35,15 @@ public class WeatherListenerService extends WearableListenerService
     private static final String TAG = "WeatherListenerService";
     private static final int TIMEOUT_MS = 2000;
 
-    private GoogleApiClient mGoogleApiClient;
+    private static final int ICON_CACHE_SIZE = 8;
+
+    /**
+     * Decoded icons at icon_size, keyed by asset digest.  Static so it outlives each service
+     * instance, which is torn down between data events.
+     */
+    private static final LruCache<String, Bitmap> sIconCache = new LruCache<>(ICON_CACHE_SIZE);
 
-    private LocalBroadcastManager broadcastManager;
+    private GoogleApiClient mGoogleApiClient;
 
     @Override
     public void onCreate() {
@@ -50,8 +57,13 @@ public class WeatherListenerService extends WearableListenerService
                 .addOnConnectionFailedListener(this)
                 .build();
         mGoogleApiClient.connect();
+    }
 
-        broadcastManager = LocalBroadcastManager.getInstance(getApplicationContext());
+    @Override
+    public void onDestroy() {
+        // The client lives as long as the service, so events in a burst share one connection.
+        mGoogleApiClient.disconnect();
+        super.onDestroy();
     }
 
     @Override
@@ -63,6 +75,17 @@ public class WeatherListenerService extends WearableListenerService
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
         Log.i(TAG, "onMessageReceived: " + messageEvent.getPath() + " " + messageEvent.getData() + " for " + getPackageName());
+        if (CURRENT_PATH.equals(messageEvent.getPath())) {
+            // What we have is still the latest, so it's fresh as of now.
+            Weather last = WeatherState.get();
+            if (last == null) {
+                last = WeatherStore.read(this);
+            }
+            if (last != null) {
+                publish(new Weather(last.tempMax, last.tempMin, last.image, last.forecast,
+                        System.currentTimeMillis()));
+            }
+        }
     }
 
     @Override
@@ -81,11 +104,22 @@ public class WeatherListenerService extends WearableListenerService
 
         Log.i(TAG, "updateWeather: " + data);
 
-        broadcastManager.sendBroadcast(
-                new Intent(WEATHER_UPDATE_ACTION)
-                        .putExtra(KEY_TEMP_MAX, data.getInt(KEY_TEMP_MAX))
-                        .putExtra(KEY_TEMP_MIN, data.getInt(KEY_TEMP_MIN))
-                        .putExtra(KEY_IMAGE, loadBitmapFromAsset(data.getAsset(KEY_IMAGE))));
+        Asset image = data.getAsset(KEY_IMAGE);
+        Weather weather = new Weather(
+                data.getInt(KEY_TEMP_MAX),
+                data.getInt(KEY_TEMP_MIN),
+                image != null ? loadBitmapFromAsset(image) : null,
+                data.getByteArray(KEY_FORECAST),
+                System.currentTimeMillis());
+        publish(weather);
+    }
+
+    /**
+     * Saves weather and hands it to the watch face.
+     */
+    private void publish(Weather weather) {
+        WeatherState.set(weather);
+        WeatherStore.write(this, weather);
     }
 
     @Override
@@ -106,19 +140,47 @@ public class WeatherListenerService extends WearableListenerService
         if (asset == null) {
             throw new IllegalArgumentException("Asset must be non-null");
         }
-        ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        if (!result.isSuccess()) {
-            return null;
+        // The phone only sends a handful of different icons, so most updates are a cache hit.
+        String digest = asset.getDigest();
+        Bitmap cached = digest != null ? sIconCache.get(digest) : null;
+        if (cached != null) {
+            return cached;
+        }
+
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!result.isSuccess()) {
+                return null;
+            }
         }
         // convert asset into a file descriptor and block until it's ready
         InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
-        mGoogleApiClient.disconnect();
 
         if (assetInputStream == null) {
             Log.w(TAG, "Requested an unknown Asset.");
             return null;
         }
         // decode the stream into a bitmap
-        return BitmapFactory.decodeStream(assetInputStream);
+        Bitmap bitmap = BitmapFactory.decodeStream(assetInputStream);
+        try {
+            assetInputStream.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing asset stream", e);
+        }
+        if (bitmap == null) {
+            return null;
+        }
+
+        // Scale once here rather than on every frame of the watch face.
+        int iconSize = getResources().getDimensionPixelSize(R.dimen.icon_size);
+        if (bitmap.getWidth() != iconSize || bitmap.getHeight() != iconSize) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, iconSize, iconSize, true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+        if (digest != null) {
+            sIconCache.put(digest, bitmap);
+        }
+        return bitmap;
     }
 }
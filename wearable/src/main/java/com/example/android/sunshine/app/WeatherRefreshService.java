@@ -0,0 +1,72 @@
+package com.example.android.sunshine.app;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks the phone for fresh weather.  The phone answers either by updating the weather data item
+ * or, if nothing changed, with a {@link WearableConstants#CURRENT_PATH} message.
+ */
+public class WeatherRefreshService extends IntentService {
+
+    private static final String TAG = "WeatherRefreshService";
+    private static final int TIMEOUT_MS = 2000;
+
+    // Don't ask more often than this, however often the face wakes up
+    private static final long RETRY_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private static long sLastRequestTime = -RETRY_MS;
+
+    public WeatherRefreshService() {
+        super("WeatherRefreshService");
+    }
+
+    /**
+     * Asks the phone for fresh weather if ours is older than
+     * {@link WearableConstants#REFRESH_AFTER_MS} and we haven't asked recently.
+     */
+    public static void requestIfOld(Context context, long weatherReceivedTime) {
+        if (System.currentTimeMillis() - weatherReceivedTime < WearableConstants.REFRESH_AFTER_MS) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - sLastRequestTime < RETRY_MS) {
+            return;
+        }
+        sLastRequestTime = now;
+        context.startService(new Intent(context, WeatherRefreshService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        GoogleApiClient client = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult result = client.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (!result.isSuccess()) {
+            Log.w(TAG, "Connection failed: " + result);
+            return;
+        }
+        try {
+            NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(client).await();
+            for (Node node : nodes.getNodes()) {
+                Log.i(TAG, "Asking " + node.getDisplayName() + " for fresh weather");
+                Wearable.MessageApi.sendMessage(client, node.getId(),
+                        WearableConstants.REFRESH_PATH, null).await();
+            }
+        } finally {
+            client.disconnect();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.android.sunshine.app;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link Weather} for everything in this process.  {@link Weather} is
+ * immutable, so readers just take the latest snapshot, on any thread, without locking.
+ *
+ * {@link WeatherListenerService} is the only writer.  The watch face may also seed the holder
+ * from {@link WeatherStore} when it starts, which only takes effect while it is still empty.
+ */
+public final class WeatherState {
+
+    public interface Listener {
+        /**
+         * Called on the writer's thread after the weather has changed.
+         */
+        void onWeatherChanged(Weather weather);
+    }
+
+    private static final AtomicReference<Weather> sWeather = new AtomicReference<>();
+    private static final CopyOnWriteArrayList<Listener> sListeners = new CopyOnWriteArrayList<>();
+
+    private WeatherState() {
+    }
+
+    /**
+     * @return the latest weather, or null if there is none yet
+     */
+    public static Weather get() {
+        return sWeather.get();
+    }
+
+    public static void set(Weather weather) {
+        sWeather.set(weather);
+        notifyListeners(weather);
+    }
+
+    /**
+     * Sets weather only if there isn't any yet, e.g. from what was saved on disk.
+     *
+     * @return the weather now held, which is weather unless something newer got there first
+     */
+    public static Weather setIfEmpty(Weather weather) {
+        if (sWeather.compareAndSet(null, weather)) {
+            notifyListeners(weather);
+            return weather;
+        }
+        return sWeather.get();
+    }
+
+    private static void notifyListeners(Weather weather) {
+        for (Listener listener : sListeners) {
+            listener.onWeatherChanged(weather);
+        }
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+}
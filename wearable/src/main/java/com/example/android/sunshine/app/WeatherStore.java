@@ -0,0 +1,135 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last {@link Weather} from the phone in a small file, so the watch face has something
+ * to show straight after a reboot or a face switch, before the phone syncs again.
+ *
+ * File layout (big-endian): magic, version, received time, max, min, then the forecast bytes and
+ * the icon as PNG, each as an int byte count (0 for none) followed by the bytes.
+ */
+public final class WeatherStore {
+
+    private static final String TAG = "WeatherStore";
+
+    private static final String FILE_NAME = "weather.last";
+    private static final int MAGIC = 0x57545852; // "WTXR"
+    // Bump this whenever the layout above changes; older files are then ignored.
+    private static final int VERSION = 1;
+
+    private WeatherStore() {
+    }
+
+    /**
+     * Saves weather, replacing what was there.  Does disk work and encodes the icon, so call it
+     * off the main thread.
+     */
+    public static void write(Context context, Weather weather) {
+        byte[] image = null;
+        if (weather.image != null) {
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+            weather.image.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+            image = byteStream.toByteArray();
+        }
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File tmp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(weather.receivedTime);
+            out.writeInt(weather.tempMax);
+            out.writeInt(weather.tempMin);
+            writeBytes(out, weather.forecast);
+            writeBytes(out, image);
+            out.close();
+            out = null;
+            // Readers only ever see a complete file.
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "Couldn't replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + tmp, e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Reads the saved weather.  Small enough to read on the main thread when the face starts.
+     *
+     * @return the last weather, or null if nothing usable has been saved
+     */
+    public static Weather read(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long receivedTime = in.readLong();
+            int tempMax = in.readInt();
+            int tempMin = in.readInt();
+            byte[] forecast = readBytes(in);
+            byte[] image = readBytes(in);
+            Bitmap bitmap = image != null ? BitmapFactory.decodeByteArray(image, 0, image.length) : null;
+            return new Weather(tempMax, tempMin, bitmap, forecast, receivedTime);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file is no worse than not having one.
+            Log.e(TAG, "Error reading " + file, e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing weather store", e);
+            }
+        }
+    }
+}